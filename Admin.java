@@ -0,0 +1,48 @@
+import java.io.*;
+import java.net.Socket;
+import java.util.Base64;
+
+// Read-only admin queries against a GameServer node's admin port, which only listens on 127.0.0.1
+// Usage: java Admin host:adminPort snapshot <matchId>
+//        java Admin host:adminPort export <file>
+public class Admin {
+    private static final int MAX_LINE_LENGTH = 1 << 20; // an EXPORT_DATA line is about 64 KiB
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[1].equals("snapshot") || args[1].equals("export"))) {
+            System.err.println("Usage: java Admin host:adminPort snapshot <matchId> | java Admin host:adminPort export <file>");
+            System.exit(1);
+        }
+
+        String[] address = args[0].split(":");
+        Connection connection = new TcpConnection(new Socket(address[0], Integer.parseInt(address[1])));
+        try {
+            if (args[1].equals("snapshot")) {
+                connection.writeLine("SNAPSHOT " + args[2]);
+                connection.flush();
+                System.out.println(connection.readLine(MAX_LINE_LENGTH));
+                return;
+            }
+
+            connection.writeLine("EXPORT");
+            connection.flush();
+            long bytes = 0;
+            String line;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]))) {
+                while ((line = connection.readLine(MAX_LINE_LENGTH)) != null && line.startsWith("EXPORT_DATA ")) {
+                    byte[] chunk = Base64.getDecoder().decode(line.substring("EXPORT_DATA ".length()));
+                    out.write(chunk);
+                    bytes += chunk.length;
+                }
+            }
+            if (line == null || !line.startsWith("EXPORT_END ")) {
+                System.err.println("Export failed: " + line);
+                System.exit(1);
+            }
+            System.out.println("Exported " + line.substring("EXPORT_END ".length()) + " matches, "
+                    + bytes + " bytes to " + args[2]);
+        } finally {
+            connection.close();
+        }
+    }
+}
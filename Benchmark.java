@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Plays bot against bot inside one process over LoopbackConnection, so the result is game-logic
+// throughput without any socket cost.
+// Usage: java Benchmark [games] [parallel games]
+public class Benchmark {
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int parallel = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        GameServer server = new GameServer(0, "bench", "rules.properties");
+        server.setLogCommands(false);
+        server.setKeepStats(false); // bot games must not end up in a stats file
+        server.open();
+        int players = server.getRules().getPlayers();
+
+        AtomicLong messages = new AtomicLong();
+        ExecutorService bots = Executors.newFixedThreadPool(parallel * players);
+        long start = System.nanoTime();
+        for (int i = 0; i < games * players; i++) {
+            bots.execute(() -> {
+                try {
+                    messages.addAndGet(playBot(server.connectLocal()));
+                } catch (IOException e) {
+                    System.err.println("Bot failed: " + e.getMessage());
+                }
+            });
+        }
+        bots.shutdown();
+        bots.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games in %.2f s: %.0f games/s, %.0f server messages/s%n",
+                games, seconds, games / seconds, messages.get() / seconds);
+        System.exit(0);
+    }
+
+    // Places its fleet in the first free spots, then fires at every cell of the first opponent
+    // still in the game. Returns the number of messages it received.
+    private static long playBot(Connection connection) throws IOException {
+        long received = 0;
+        int playerId = 0;
+        Rules rules = null;
+        boolean[] eliminated = null;
+        int[] sunk = null; // per player, a SALVO_RESULT can hand us the turn before ELIMINATED arrives
+        int[] nextCell = null; // per opponent
+
+        connection.writeLine("JOIN bot");
+        connection.flush();
+
+        String message;
+        while ((message = connection.readLine(MAX_LINE_LENGTH)) != null) {
+            received++;
+            if (message.startsWith("#")) {
+                message = message.substring(message.indexOf(' ') + 1); // replies to the pipelined setup
+            }
+            String[] parts = message.split(" ");
+
+            if (parts[0].equals("PLAYER")) {
+                playerId = Integer.parseInt(parts[1]);
+            } else if (parts[0].equals("RULES")) {
+                rules = Rules.parse(message.substring("RULES".length()));
+                eliminated = new boolean[rules.getPlayers() + 1];
+                sunk = new int[rules.getPlayers() + 1];
+                nextCell = new int[rules.getPlayers() + 1];
+                sendFleet(connection, rules);
+            } else if (parts[0].equals("ELIMINATED")) {
+                eliminated[Integer.parseInt(parts[1])] = true;
+            } else if (parts[0].equals("TURN") || parts[0].equals("ATTACK_RESULT") || parts[0].equals("SALVO_RESULT")) {
+                if (!parts[0].equals("TURN")) {
+                    int target = Integer.parseInt(parts[2]);
+                    for (String part : parts) {
+                        if (part.equals("SINK") && ++sunk[target] == rules.getFleetSize()) {
+                            eliminated[target] = true;
+                        }
+                    }
+                    if (parts[0].equals("ATTACK_RESULT")) {
+                        continue; // TURN follows
+                    }
+                }
+                int turn = Integer.parseInt(parts[0].equals("TURN") ? parts[1] : parts[3]);
+                if (turn == playerId) {
+                    int target = 1;
+                    while (target == playerId || eliminated[target]) {
+                        target++;
+                    }
+                    nextCell[target] = fire(connection, rules, target, nextCell[target]);
+                }
+            } else if (parts[0].equals("GAME_OVER") || parts[0].equals("OPPONENT_DISCONNECTED")) {
+                break;
+            }
+        }
+        connection.close();
+        return received;
+    }
+
+    // Lays the fleet out on a local board first, so every placement and READY can go out at once
+    private static void sendFleet(Connection connection, Rules rules) throws IOException {
+        Board board = new Board();
+        int sequence = 1;
+        int cell = 0;
+        for (Shape shape : rules.getShapes()) {
+            for (int i = 0; i < rules.getCount(shape); i++) {
+                while (!board.placeBlock(cell / Board.SIZE, cell % Board.SIZE, shape, 0)) {
+                    cell++;
+                }
+                connection.writeLine("#" + sequence++ + " PLACE_BLOCK " + cell / Board.SIZE + " " + cell % Board.SIZE
+                        + " " + shape.getName() + " 0");
+            }
+        }
+        connection.writeLine("#" + sequence + " READY");
+        connection.flush();
+    }
+
+    private static int fire(Connection connection, Rules rules, int target, int nextCell) throws IOException {
+        int shots = Math.min(rules.getShotsPerTurn(), Board.SIZE * Board.SIZE - nextCell);
+        if (rules.getShotsPerTurn() == 1) {
+            connection.writeLine("ATTACK " + nextCell / Board.SIZE + " " + nextCell % Board.SIZE + " " + target);
+        } else {
+            StringBuilder command = new StringBuilder("ATTACK_MULTI");
+            for (int i = 0; i < shots; i++) {
+                command.append(' ').append((nextCell + i) / Board.SIZE).append(' ').append((nextCell + i) % Board.SIZE);
+            }
+            connection.writeLine(command.append(' ').append(target).toString());
+        }
+        connection.flush();
+        return nextCell + shots;
+    }
+}
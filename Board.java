@@ -1,11 +1,20 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Predicate;
 
 public class Board {
     public static final int SIZE = 10;
+    public static final int MASK_WORDS = (SIZE * SIZE + 63) / 64; // longs in a one-bit-per-cell mask
 
     private Entity[][] grid;
-    private List<int[][]> blockCoordinates; // List of coordinates for each block
+    // Cells of every block, block after block, as row * SIZE + col. Sized for the worst case up front,
+    // so placing blocks and reset() never allocate.
+    private int[] blockCells;
+    private int[] blockStart; // block id -> first index in blockCells, blockStart[id + 1] is its end
+    private Shape[] blockShapes; // shape of each block
+    private long[] occupied; // one bit per cell, index row * SIZE + col
+    private long[] hitCells; // same layout
+    private long[] sunkCells;
     private int nextBlockId;
     private int totalBlocks;
     private int sunkBlocks;
@@ -13,7 +22,12 @@ public class Board {
     // Create a new empty board
     public Board() {
         grid = new Entity[SIZE][SIZE];
-        blockCoordinates = new ArrayList<>();
+        blockCells = new int[SIZE * SIZE];
+        blockStart = new int[SIZE * SIZE + 1];
+        blockShapes = new Shape[SIZE * SIZE];
+        occupied = new long[MASK_WORDS];
+        hitCells = new long[MASK_WORDS];
+        sunkCells = new long[MASK_WORDS];
         nextBlockId = 0;
         totalBlocks = 0;
         sunkBlocks = 0;
@@ -25,6 +39,22 @@ public class Board {
         }
     }
 
+    // Back to an empty board, so a finished match's boards can be reused by the next one
+    public void reset() {
+        for (Entity[] row : grid) {
+            for (Entity entity : row) {
+                entity.reset();
+            }
+        }
+        Arrays.fill(blockShapes, 0, totalBlocks, null);
+        Arrays.fill(occupied, 0L);
+        Arrays.fill(hitCells, 0L);
+        Arrays.fill(sunkCells, 0L);
+        nextBlockId = 0;
+        totalBlocks = 0;
+        sunkBlocks = 0;
+    }
+
     public boolean isValidCoordinate(int row, int col) {
         return row >= 0 && row < SIZE && col >= 0 && col < SIZE;
     }
@@ -36,59 +66,37 @@ public class Board {
         return null;
     }
 
-    public boolean placeBlock(int row, int col, Entity.Type type, boolean horizontal) {
-        int width, height;
-
-        switch (type) {
-            case BLOCK_2x1:
-                width = horizontal ? 2 : 1;
-                height = horizontal ? 1 : 2;
-                break;
-            case BLOCK_3x1:
-                width = horizontal ? 3 : 1;
-                height = horizontal ? 1 : 3;
-                break;
-            case BLOCK_4x2:
-                width = horizontal ? 4 : 2;
-                height = horizontal ? 2 : 4;
-                break;
-            case BLOCK_5x1:
-                width = horizontal ? 5 : 1;
-                height = horizontal ? 1 : 5;
-                break;
-            default:
-                return false;
-        }
+    // Anchor (row, col) is the top-left corner of the rotated shape
+    public boolean placeBlock(int row, int col, Shape shape, int rotation) {
+        long[] footprint = shape.footprint(rotation, row, col);
 
         // check if block is out of board
-        if (row + height > SIZE || col + width > SIZE) {
+        if (footprint == null) {
             return false;
         }
 
         // if there are block , cant paste it
-        for (int r = row; r < row + height; r++) {
-            for (int c = col; c < col + width; c++) {
-                if (grid[r][c].isBlock()) {
-                    return false;
-                }
+        for (int i = 0; i < MASK_WORDS; i++) {
+            if ((occupied[i] & footprint[i]) != 0) {
+                return false;
             }
         }
 
         int blockId = nextBlockId++;
-        int[][] coordinates = new int[width * height][2];
-        int index = 0;
-
-        for (int r = row; r < row + height; r++) {
-            for (int c = col; c < col + width; c++) {
-                grid[r][c].setType(type);
-                grid[r][c].setBlockId(blockId);
-                coordinates[index][0] = r;
-                coordinates[index][1] = c;
-                index++;
-            }
+        int next = blockStart[blockId];
+
+        for (int[] offset : shape.cells(rotation)) {
+            int r = row + offset[0];
+            int c = col + offset[1];
+            grid[r][c].setBlockId(blockId);
+            blockCells[next++] = r * SIZE + c;
+        }
+        for (int i = 0; i < MASK_WORDS; i++) {
+            occupied[i] |= footprint[i];
         }
 
-        blockCoordinates.add(coordinates);
+        blockStart[blockId + 1] = next;
+        blockShapes[blockId] = shape;
         totalBlocks++;
         return true;
     }
@@ -106,6 +114,8 @@ public class Board {
         }
 
         boolean isHit = targetEntity.hit();
+        int index = row * SIZE + col;
+        hitCells[index >> 6] |= 1L << index;
 
         if (!isHit) {
             return 0; // Miss
@@ -114,8 +124,8 @@ public class Board {
         int blockId = targetEntity.getBlockId();
         boolean allHit = true;
 
-        for (int[] coord : blockCoordinates.get(blockId)) {
-            if (!grid[coord[0]][coord[1]].isHit()) {
+        for (int i = blockStart[blockId]; i < blockStart[blockId + 1]; i++) {
+            if (!grid[blockCells[i] / SIZE][blockCells[i] % SIZE].isHit()) {
                 allHit = false;
                 break;
             }
@@ -123,8 +133,9 @@ public class Board {
 
         // If block sunk
         if (allHit) {
-            for (int[] coord : blockCoordinates.get(blockId)) {
-                grid[coord[0]][coord[1]].setSunk(true);
+            for (int i = blockStart[blockId]; i < blockStart[blockId + 1]; i++) {
+                grid[blockCells[i] / SIZE][blockCells[i] % SIZE].setSunk(true);
+                sunkCells[blockCells[i] >> 6] |= 1L << blockCells[i];
             }
             sunkBlocks++;
             return 2;
@@ -137,11 +148,73 @@ public class Board {
         return sunkBlocks >= totalBlocks && totalBlocks > 0;
     }
 
-    public int getNextBlockId() {
-        return nextBlockId;
+    public int getTotalBlocks() {
+        return totalBlocks;
     }
 
-    public void incrementTotalBlocks() {
-        totalBlocks++;
+    public int getSunkBlocks() {
+        return sunkBlocks;
+    }
+
+    // Count placed blocks of one shape
+    public int countBlocks(Shape shape) {
+        int count = 0;
+        for (int i = 0; i < totalBlocks; i++) {
+            if (blockShapes[i] == shape) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Copies of the cell masks (MASK_WORDS longs, bit row * SIZE + col), cheap enough to take after every move
+    public long[] copyBlockCells() {
+        return occupied.clone();
+    }
+
+    public long[] copyHitCells() {
+        return hitCells.clone();
+    }
+
+    public long[] copySunkCells() {
+        return sunkCells.clone();
+    }
+
+    // One bit per cell (index row * SIZE + col) for every entity matching the filter
+    public BitSet mask(Predicate<Entity> filter) {
+        BitSet bits = new BitSet(SIZE * SIZE);
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (filter.test(grid[row][col])) {
+                    bits.set(row * SIZE + col);
+                }
+            }
+        }
+        return bits;
+    }
+
+    // Hex encoding of a cell mask, at most 26 characters for a 10x10 board
+    public static String encodeMask(BitSet bits) {
+        byte[] bytes = bits.toByteArray();
+        if (bytes.length == 0) {
+            return "0";
+        }
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static BitSet decodeMask(String hex) {
+        if (hex.equals("0")) {
+            return new BitSet(SIZE * SIZE);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return BitSet.valueOf(bytes);
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+import java.io.IOException;
+
+// A line based connection to one peer. GameServer and GameClient only talk through this,
+// so the same protocol code runs over TCP or in memory.
+public interface Connection {
+    // Next line without its line break, null once the peer has closed.
+    // Throws if the line is longer than maxLength.
+    String readLine(int maxLength) throws IOException;
+
+    // May be buffered until flush()
+    void writeLine(String line) throws IOException;
+
+    // Same, for a line already encoded once for many receivers
+    default void writeLine(EncodedLine line) throws IOException {
+        writeLine(line.getText());
+    }
+
+    void flush() throws IOException;
+
+    void close();
+}
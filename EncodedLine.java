@@ -0,0 +1,26 @@
+import java.nio.charset.StandardCharsets;
+
+// One outgoing protocol line, turned into bytes once. A broadcast hands the same instance to every
+// player's outbox, so sending to N players costs one encoding and N buffer copies.
+public final class EncodedLine {
+    private final String text;
+    private final byte[] bytes; // UTF-8 including the line break, shared so never modified
+
+    public EncodedLine(String text) {
+        this.text = text;
+        this.bytes = (text + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,31 +1,20 @@
 public class Entity {
-    public enum Type {
-        EMPTY,
-        BLOCK_2x1,
-        BLOCK_3x1,
-        BLOCK_4x2,
-        BLOCK_5x1
-    }
-
-    private Type type;
     private boolean isHit;
-    private int blockId;
+    private int blockId; // -1 when the cell is empty, block shapes live in Board
     private boolean isSunk;
 
     // Create Initial Entity
     public Entity() {
-        this.type = Type.EMPTY;
         this.isHit = false;
         this.blockId = -1;
         this.isSunk = false;
     }
 
-    public void setType(Type type) {
-        this.type = type;
-    }
-
-    public Type getType() {
-        return type;
+    // Empty and untouched again, used when a board is reused
+    public void reset() {
+        this.isHit = false;
+        this.blockId = -1;
+        this.isSunk = false;
     }
 
     public boolean isHit() {
@@ -35,12 +24,12 @@ public class Entity {
     // Entity was hit
     public boolean hit() {
         this.isHit = true;
-        return type != Type.EMPTY; // return true if hit false miss
+        return isBlock(); // return true if hit false miss
     }
 
     // Check if Entity is a part of block
     public boolean isBlock() {
-        return type != Type.EMPTY;
+        return blockId >= 0;
     }
 
     public void setSunk(boolean sunk) {
@@ -13,7 +13,10 @@ import javafx.stage.Stage;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class GameClient extends Application {
@@ -22,30 +25,47 @@ public class GameClient extends Application {
     private GridPane opponentBoardGrid;
     private Button readyButton;
     private ToggleGroup blockTypeGroup;
+    private HBox blockTypeContainer;
     private ToggleGroup orientationGroup;
     private Text statusText;
     private Text remainingBlocksText;
+    private Text opponentBoardLabel;
+    private HBox targetContainer;
+    private ToggleGroup targetGroup;
     // Game state
     private Board myBoard;
-    private Board opponentBoard;
+    private Board[] opponentBoards; // by player id, every other player's board as far as we have seen it
+    private Board opponentBoard; // the one shown and attacked, opponentBoards[targetId]
+    private int targetId;
+    private boolean[] eliminated; // by player id
     private int playerId;
+    private String playerName;
     private boolean myTurn;
     private boolean gameStarted;
     private boolean placementPhase;
-    private Map<Entity.Type, Integer> blockCounts;
+    private Rules rules; // sent by the server with RULES
+    private Map<Shape, Integer> blockCounts;
 
-    private int lastPlacementRow;
-    private int lastPlacementCol;
-    private Entity.Type lastPlacementType;
-    private boolean lastPlacementHorizontal;
+    private final List<int[]> salvoTargets = new ArrayList<>();
 
-    private int opponentRemainingBlocks = 6;
+    // Placements sent but not answered yet, by sequence number. Replies carry the number,
+    // so several can be in flight at once.
+    private final Map<Integer, Placement> pendingPlacements = new HashMap<>();
+    private int nextSequence = 1;
 
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private int[] opponentRemainingBlocks; // by player id
+
+    private volatile Connection connection;
     private static final String HOST = "localhost";
     private static final int PORT = 8080;
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    // Session resume after a dropped connection
+    private volatile String sessionToken;
+    private volatile boolean matchFinished;
+    private volatile boolean closing;
+    private static final long RESUME_WINDOW_MS = 30000; // matches the server grace period
+    private static final long RESUME_RETRY_MS = 2000;
 
     private static final int CELL_SIZE = 25;
 
@@ -58,10 +78,12 @@ public class GameClient extends Application {
         myTurn = false;
 
         blockCounts = new HashMap<>();
-        blockCounts.put(Entity.Type.BLOCK_2x1, 2);
-        blockCounts.put(Entity.Type.BLOCK_3x1, 2);
-        blockCounts.put(Entity.Type.BLOCK_4x2, 1);
-        blockCounts.put(Entity.Type.BLOCK_5x1, 1);
+
+        TextInputDialog nameDialog = new TextInputDialog("guest");
+        nameDialog.setTitle("Block Battle");
+        nameDialog.setHeaderText(null);
+        nameDialog.setContentText("Player name (letters, digits or _):");
+        playerName = nameDialog.showAndWait().orElse("guest").trim();
 
         connectToServer();
 
@@ -75,7 +97,7 @@ public class GameClient extends Application {
         statusText = new Text("Place your blocks on the left board");
         statusText.setFont(Font.font(18));
 
-        remainingBlocksText = new Text("Opponent blocks remaining: " + opponentRemainingBlocks);
+        remainingBlocksText = new Text();
         remainingBlocksText.setFont(Font.font(14));
 
         topSection.getChildren().addAll(statusText, remainingBlocksText);
@@ -98,12 +120,17 @@ public class GameClient extends Application {
         VBox opponentBoardContainer = new VBox(10);
         opponentBoardContainer.setAlignment(Pos.CENTER);
 
-        Text opponentBoardLabel = new Text("Opponent's Board");
+        opponentBoardLabel = new Text("Opponent's Board");
         opponentBoardLabel.setFont(Font.font(16));
 
+        // Target selection, only shown in free-for-all matches
+        targetContainer = new HBox(10);
+        targetContainer.setAlignment(Pos.CENTER);
+        targetGroup = new ToggleGroup();
+
         opponentBoardGrid = createBoard(false);
 
-        opponentBoardContainer.getChildren().addAll(opponentBoardLabel, opponentBoardGrid);
+        opponentBoardContainer.getChildren().addAll(opponentBoardLabel, targetContainer, opponentBoardGrid);
 
         boardsContainer.getChildren().addAll(myBoardContainer, opponentBoardContainer);
         root.setCenter(boardsContainer);
@@ -113,63 +140,46 @@ public class GameClient extends Application {
         controlsContainer.setAlignment(Pos.CENTER);
         controlsContainer.setPadding(new Insets(20, 0, 0, 0));
 
-        // Block type selection
-        HBox blockTypeContainer = new HBox(10);
+        // Block type selection, buttons are added when the server sends RULES
+        blockTypeContainer = new HBox(10);
         blockTypeContainer.setAlignment(Pos.CENTER);
-
-        Text blockTypeLabel = new Text("Block Type:");
         blockTypeGroup = new ToggleGroup();
 
-        RadioButton block2x1Button = new RadioButton("2x1 (" + blockCounts.get(Entity.Type.BLOCK_2x1) + ")");
-        block2x1Button.setToggleGroup(blockTypeGroup);
-        block2x1Button.setUserData(Entity.Type.BLOCK_2x1);
-        block2x1Button.setSelected(true);
-
-        RadioButton block3x1Button = new RadioButton("3x1 (" + blockCounts.get(Entity.Type.BLOCK_3x1) + ")");
-        block3x1Button.setToggleGroup(blockTypeGroup);
-        block3x1Button.setUserData(Entity.Type.BLOCK_3x1);
-
-        RadioButton block4x2Button = new RadioButton("4x2 (" + blockCounts.get(Entity.Type.BLOCK_4x2) + ")");
-        block4x2Button.setToggleGroup(blockTypeGroup);
-        block4x2Button.setUserData(Entity.Type.BLOCK_4x2);
-
-        RadioButton block5x1Button = new RadioButton("5x1 (" + blockCounts.get(Entity.Type.BLOCK_5x1) + ")");
-        block5x1Button.setToggleGroup(blockTypeGroup);
-        block5x1Button.setUserData(Entity.Type.BLOCK_5x1);
-
-        blockTypeContainer.getChildren().addAll(
-                blockTypeLabel, block2x1Button, block3x1Button, block4x2Button, block5x1Button);
-
         // Orientation selection
         HBox orientationContainer = new HBox(10);
         orientationContainer.setAlignment(Pos.CENTER);
 
-        Text orientationLabel = new Text("Orientation:");
+        Text orientationLabel = new Text("Rotation (clockwise):");
         orientationGroup = new ToggleGroup();
-
-        RadioButton horizontalButton = new RadioButton("Horizontal");
-        horizontalButton.setToggleGroup(orientationGroup);
-        horizontalButton.setUserData(Boolean.TRUE);
-        horizontalButton.setSelected(true);
-
-        RadioButton verticalButton = new RadioButton("Vertical");
-        verticalButton.setToggleGroup(orientationGroup);
-        verticalButton.setUserData(Boolean.FALSE);
-
-        orientationContainer.getChildren().addAll(orientationLabel, horizontalButton, verticalButton);
+        orientationContainer.getChildren().add(orientationLabel);
+
+        for (int rotation = 0; rotation < Shape.ROTATIONS; rotation++) {
+            RadioButton rotationButton = new RadioButton(String.valueOf(rotation * 90));
+            rotationButton.setToggleGroup(orientationGroup);
+            rotationButton.setUserData(rotation);
+            rotationButton.setSelected(rotation == 0);
+            orientationContainer.getChildren().add(rotationButton);
+        }
 
         // Ready button
         readyButton = new Button("Ready");
         readyButton.setDisable(true);
         readyButton.setOnAction(e -> {
             if (placementPhase) {
-                out.println("READY");
+                send("READY");
                 disablePlacementControls();
                 statusText.setText("Waiting for opponent...");
             }
         });
 
-        controlsContainer.getChildren().addAll(blockTypeContainer, orientationContainer, readyButton);
+        Button leaderboardButton = new Button("Leaderboard");
+        leaderboardButton.setOnAction(e -> new Thread(this::fetchLeaderboard).start());
+
+        HBox buttonContainer = new HBox(10);
+        buttonContainer.setAlignment(Pos.CENTER);
+        buttonContainer.getChildren().addAll(readyButton, leaderboardButton);
+
+        controlsContainer.getChildren().addAll(blockTypeContainer, orientationContainer, buttonContainer);
         root.setBottom(controlsContainer);
 
         // Create scene
@@ -183,12 +193,9 @@ public class GameClient extends Application {
         boardsContainer.prefHeightProperty().bind(scene.heightProperty().subtract(200));
 
         primaryStage.setOnCloseRequest(e -> {
-            try {
-                if (socket != null && !socket.isClosed()) {
-                    socket.close();
-                }
-            } catch (IOException ex) {
-                ex.printStackTrace();
+            closing = true;
+            if (connection != null) {
+                connection.close();
             }
             Platform.exit();
         });
@@ -235,21 +242,36 @@ public class GameClient extends Application {
     }
 
     private void placeBlock(int row, int col) {
-        Entity.Type selectedType = (Entity.Type) blockTypeGroup.getSelectedToggle().getUserData();
-        Boolean horizontal = (Boolean) orientationGroup.getSelectedToggle().getUserData();
+        if (blockTypeGroup.getSelectedToggle() == null) {
+            return; // RULES not received yet
+        }
+        Shape selectedShape = (Shape) blockTypeGroup.getSelectedToggle().getUserData();
+        int rotation = (Integer) orientationGroup.getSelectedToggle().getUserData();
 
-        if (blockCounts.get(selectedType) <= 0) {
+        if (blockCounts.get(selectedShape) <= 0) {
             statusText.setText("No more blocks of this type available");
             return;
         }
 
-        lastPlacementRow = row;
-        lastPlacementCol = col;
-        lastPlacementType = selectedType;
-        lastPlacementHorizontal = horizontal;
+        int sequence = nextSequence++;
+        pendingPlacements.put(sequence, new Placement(row, col, selectedShape, rotation));
 
         // send PLACE_BLOCK... to server
-        out.println("PLACE_BLOCK " + row + " " + col + " " + selectedType + " " + horizontal);
+        send("#" + sequence + " PLACE_BLOCK " + row + " " + col + " " + selectedShape.getName() + " " + rotation);
+    }
+
+    private static class Placement {
+        final int row;
+        final int col;
+        final Shape shape;
+        final int rotation;
+
+        Placement(int row, int col, Shape shape, int rotation) {
+            this.row = row;
+            this.col = col;
+            this.shape = shape;
+            this.rotation = rotation;
+        }
     }
 
     // Attack opponent's board
@@ -259,7 +281,41 @@ public class GameClient extends Application {
             return;
         }
 
-        out.println("ATTACK " + row + " " + col);
+        if (rules.getShotsPerTurn() > 1) {
+            selectSalvoTarget(row, col);
+            return;
+        }
+
+        send("ATTACK " + row + " " + col + " " + targetId);
+        myTurn = false;
+    }
+
+    // Salvo mode: collect the turn's targets, then fire them as one ATTACK_MULTI
+    private void selectSalvoTarget(int row, int col) {
+        for (int[] target : salvoTargets) {
+            if (target[0] == row && target[1] == col) {
+                statusText.setText("You already picked this position!");
+                return;
+            }
+        }
+        salvoTargets.add(new int[] {row, col});
+        Rectangle cell = (Rectangle) opponentBoardGrid.getChildren().get(row * Board.SIZE + col);
+        cell.setFill(Color.ORANGE);
+
+        int openCells = opponentBoard.mask(e -> !e.isHit()).cardinality();
+        int shots = Math.min(rules.getShotsPerTurn(), openCells);
+        if (salvoTargets.size() < shots) {
+            statusText.setText("Target " + salvoTargets.size() + " of " + shots + " selected");
+            return;
+        }
+
+        StringBuilder command = new StringBuilder("ATTACK_MULTI");
+        for (int[] target : salvoTargets) {
+            command.append(' ').append(target[0]).append(' ').append(target[1]);
+        }
+        command.append(' ').append(targetId);
+        salvoTargets.clear();
+        send(command.toString());
         myTurn = false;
     }
 
@@ -272,22 +328,7 @@ public class GameClient extends Application {
                 if (entity.isHit()) {
                     cell.setFill(Color.DARKRED); // Hit
                 } else {
-                    switch (entity.getType()) {
-                        case BLOCK_2x1:
-                            cell.setFill(Color.LIGHTGREEN);
-                            break;
-                        case BLOCK_3x1:
-                            cell.setFill(Color.LIGHTGREEN);
-                            break;
-                        case BLOCK_4x2:
-                            cell.setFill(Color.LIGHTGREEN);
-                            break;
-                        case BLOCK_5x1:
-                            cell.setFill(Color.LIGHTGREEN);
-                            break;
-                        default:
-                            cell.setFill(Color.LIGHTBLUE);
-                    }
+                    cell.setFill(Color.LIGHTGREEN);
                 }
             } else if (entity.isHit()) {
                 cell.setFill(Color.DARKGRAY); // Miss
@@ -308,12 +349,45 @@ public class GameClient extends Application {
         }
     }
 
+    // A failed write means the connection dropped, the receive thread notices and resumes
+    private void send(String message) {
+        Connection current = connection;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.writeLine(message);
+            current.flush();
+        } catch (IOException e) {
+            System.err.println("Could not send to server: " + e.getMessage());
+        }
+    }
+
+    // On its own connection: behind a gateway that is the leaderboard of every node, not only this match's
+    private void fetchLeaderboard() {
+        Connection query = null;
+        try {
+            query = new TcpConnection(new Socket(HOST, PORT));
+            query.writeLine("LEADERBOARD");
+            query.flush();
+            String reply = query.readLine(MAX_LINE_LENGTH);
+            if (reply != null) {
+                Platform.runLater(() -> processServerMessage(reply));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not fetch leaderboard: " + e.getMessage());
+        } finally {
+            if (query != null) {
+                query.close();
+            }
+        }
+    }
+
     // Connected to server
     private void connectToServer() {
         try {
-            socket = new Socket(HOST, PORT);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            connection = new TcpConnection(new Socket(HOST, PORT));
+            send("JOIN " + playerName);
 
             System.out.println("Connected to server");
         } catch (IOException e) {
@@ -343,21 +417,105 @@ public class GameClient extends Application {
         }
     }
 
-    private void updateBlockCount(Entity.Type type, boolean decrease) {
+    // Full fleet before anything is placed
+    private void resetBlockCounts() {
+        blockCounts.clear();
+        for (Shape shape : rules.getShapes()) {
+            blockCounts.put(shape, rules.getCount(shape));
+        }
+    }
+
+    // Build the block buttons for the fleet the server uses
+    private void applyRules(String wire) {
+        rules = Rules.parse(wire);
+        resetBlockCounts();
+
+        blockTypeContainer.getChildren().setAll(new Text("Block Type:"));
+        blockTypeGroup = new ToggleGroup();
+        for (Shape shape : rules.getShapes()) {
+            RadioButton blockButton = new RadioButton(shape.getName());
+            blockButton.setToggleGroup(blockTypeGroup);
+            blockButton.setUserData(shape);
+            blockTypeContainer.getChildren().add(blockButton);
+        }
+        blockTypeGroup.selectToggle(blockTypeGroup.getToggles().get(0));
+        refreshBlockControls();
+
+        int players = rules.getPlayers();
+        if (opponentBoards == null || opponentBoards.length != players + 1) {
+            opponentBoards = new Board[players + 1];
+            for (int id = 1; id <= players; id++) {
+                opponentBoards[id] = new Board();
+            }
+        }
+        opponentRemainingBlocks = new int[players + 1];
+        eliminated = new boolean[players + 1];
+        for (int id = 1; id <= players; id++) {
+            opponentRemainingBlocks[id] = rules.getFleetSize();
+        }
+        buildTargetButtons();
+    }
+
+    // One button per opponent, players that are out cannot be picked
+    private void buildTargetButtons() {
+        targetContainer.getChildren().setAll(new Text("Target:"));
+        targetGroup = new ToggleGroup();
+        for (int id = 1; id < opponentBoards.length; id++) {
+            if (id == playerId) {
+                continue;
+            }
+            RadioButton targetButton = new RadioButton("Player " + id);
+            targetButton.setToggleGroup(targetGroup);
+            targetButton.setUserData(id);
+            targetButton.setDisable(eliminated[id]);
+            targetContainer.getChildren().add(targetButton);
+        }
+        targetGroup.selectedToggleProperty().addListener((observable, previous, selected) -> {
+            if (selected != null) {
+                showTarget((Integer) selected.getUserData());
+            }
+        });
+
+        boolean freeForAll = rules.getPlayers() > 2;
+        targetContainer.setVisible(freeForAll);
+        targetContainer.setManaged(freeForAll);
+        selectNextTarget();
+    }
+
+    // First opponent still in the game
+    private void selectNextTarget() {
+        for (Toggle toggle : targetGroup.getToggles()) {
+            if (!eliminated[(Integer) toggle.getUserData()]) {
+                targetGroup.selectToggle(toggle);
+                return;
+            }
+        }
+    }
+
+    private void showTarget(int id) {
+        targetId = id;
+        opponentBoard = opponentBoards[id];
+        salvoTargets.clear();
+        opponentBoardLabel.setText(rules.getPlayers() > 2 ? "Player " + id + "'s Board" : "Opponent's Board");
+        remainingBlocksText.setText("Opponent blocks remaining: " + opponentRemainingBlocks[id]);
+        refreshBoard(false);
+    }
+
+    private void updateBlockCount(Shape type, boolean decrease) {
         if (decrease) {
             blockCounts.put(type, blockCounts.get(type) - 1);
         } else {
             blockCounts.put(type, blockCounts.get(type) + 1);
         }
+        refreshBlockControls();
+    }
 
+    private void refreshBlockControls() {
         // Update radio button of select block
         for (Toggle toggle : blockTypeGroup.getToggles()) {
             RadioButton rb = (RadioButton) toggle;
-            Entity.Type buttonType = (Entity.Type) rb.getUserData();
-            if (buttonType == type) {
-                rb.setText(getTypeName(type) + " (" + blockCounts.get(type) + ")");
-                break;
-            }
+            Shape buttonShape = (Shape) rb.getUserData();
+            rb.setText(buttonShape.getName() + " (" + blockCounts.get(buttonShape) + ")");
         }
 
         int totalRemaining = 0;
@@ -367,156 +525,265 @@ public class GameClient extends Application {
         readyButton.setDisable(totalRemaining > 0); // place all block , ready button enable
     }
 
-    private String getTypeName(Entity.Type type) {
-        switch (type) {
-            case BLOCK_2x1:
-                return "2x1";
-            case BLOCK_3x1:
-                return "3x1";
-            case BLOCK_4x2:
-                return "4x2";
-            case BLOCK_5x1:
-                return "5x1";
-            default:
-                return "Unknown";
-        }
-    }
-
     // Receive and process messages from server
     private void receiveMessages() {
-        try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                final String message = line;
-                Platform.runLater(() -> processServerMessage(message));
+        if (connection == null) {
+            return; // connectToServer already reported the error
+        }
+        while (true) {
+            try {
+                String line;
+                while ((line = connection.readLine(MAX_LINE_LENGTH)) != null) {
+                    final String message = line;
+                    Platform.runLater(() -> processServerMessage(message));
+                }
+            } catch (IOException e) {
+                if (!closing) {
+                    System.err.println("Connection lost: " + e.getMessage());
+                }
             }
-        } catch (IOException e) {
-            if (!socket.isClosed()) {
-                System.err.println("Connection lost: " + e.getMessage());
+
+            if (closing || matchFinished || sessionToken == null) {
+                return;
+            }
+            if (!resumeSession()) {
                 showErrorAndExit("Connection to server lost.");
+                return;
+            }
+        }
+    }
+
+    // Reconnect with the session token, the server answers RESUMED and a SYNC snapshot
+    private boolean resumeSession() {
+        Platform.runLater(() -> statusText.setText("Connection lost, reconnecting..."));
+        long deadline = System.currentTimeMillis() + RESUME_WINDOW_MS;
+
+        while (!closing && System.currentTimeMillis() < deadline) {
+            try {
+                connection = new TcpConnection(new Socket(HOST, PORT));
+                send("RESUME " + sessionToken);
+                return true;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(RESUME_RETRY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Rebuild every board and the game phase from a SYNC message
+    // Format: SYNC phase turn ownBlocks ownHits placed opponent ...
+    // with one opponent entry per other player: id:hits:blockHits:sunk:sunkCount:eliminated(0/1)
+    private void applySync(String[] parts) {
+        pendingPlacements.clear(); // unanswered ones died with the old connection
+        String phase = parts[1];
+        int turnPlayerId = Integer.parseInt(parts[2]);
+        BitSet ownBlocks = Board.decodeMask(parts[3]);
+        BitSet ownHits = Board.decodeMask(parts[4]);
+
+        myBoard.reset();
+        salvoTargets.clear();
+
+        for (int row = 0; row < Board.SIZE; row++) {
+            for (int col = 0; col < Board.SIZE; col++) {
+                int index = row * Board.SIZE + col;
+
+                Entity own = myBoard.getEntity(row, col);
+                if (ownBlocks.get(index)) {
+                    own.setBlockId(0); // only the footprint matters for drawing
+                }
+                if (ownHits.get(index)) {
+                    own.hit();
+                }
+            }
+        }
+        BitSet ownAfloat = (BitSet) ownBlocks.clone();
+        ownAfloat.andNot(ownHits);
+        eliminated[playerId] = phase.equals("PLAYING") && !ownBlocks.isEmpty() && ownAfloat.isEmpty();
+
+        for (int i = 6; i < parts.length; i++) {
+            String[] fields = parts[i].split(":");
+            int id = Integer.parseInt(fields[0]);
+            BitSet oppHits = Board.decodeMask(fields[1]);
+            BitSet oppBlockHits = Board.decodeMask(fields[2]);
+            BitSet oppSunk = Board.decodeMask(fields[3]);
+
+            Board board = opponentBoards[id];
+            board.reset();
+            for (int index = 0; index < Board.SIZE * Board.SIZE; index++) {
+                Entity opp = board.getEntity(index / Board.SIZE, index % Board.SIZE);
+                if (oppBlockHits.get(index)) {
+                    opp.setBlockId(100 + index);
+                }
+                if (oppHits.get(index)) {
+                    opp.hit();
+                }
+                opp.setSunk(oppSunk.get(index));
+            }
+            opponentRemainingBlocks[id] = rules.getFleetSize() - Integer.parseInt(fields[4]);
+            eliminated[id] = fields[5].equals("1");
+        }
+
+        resetBlockCounts();
+        if (!parts[5].equals("-")) {
+            for (String entry : parts[5].split(",")) {
+                String[] kv = entry.split("=");
+                Shape shape = rules.getShape(kv[0]);
+                blockCounts.put(shape, blockCounts.get(shape) - Integer.parseInt(kv[1]));
             }
         }
+
+        refreshBlockControls();
+        buildTargetButtons();
+
+        placementPhase = phase.equals("PLACEMENT") || phase.equals("READY");
+        gameStarted = phase.equals("PLAYING");
+        myTurn = gameStarted && turnPlayerId == playerId;
+        matchFinished = phase.equals("OVER");
+
+        if (!phase.equals("PLACEMENT")) {
+            disablePlacementControls();
+        }
+
+        refreshBoard(true);
+
+        if (phase.equals("PLACEMENT")) {
+            statusText.setText("Reconnected! Place your blocks on the left board");
+        } else if (phase.equals("READY")) {
+            statusText.setText("Reconnected! Waiting for opponent...");
+        } else if (phase.equals("PLAYING")) {
+            statusText.setText(myTurn ? "Reconnected! Your turn!" : "Reconnected! Opponent's turn");
+        } else {
+            statusText.setText("Reconnected! The game is over.");
+        }
     }
 
     // Process message from server
     private void processServerMessage(String message) {
         System.out.println("Server: " + message);
 
+        // Replies to our tagged commands start with "#seq "
+        int sequence = 0;
+        if (message.startsWith("#")) {
+            int space = message.indexOf(' ');
+            sequence = Integer.parseInt(message.substring(1, space));
+            message = message.substring(space + 1);
+        }
+
         if (message.startsWith("PLAYER")) {
-            playerId = Integer.parseInt(message.split(" ")[1]);
+            // Format: PLAYER id sessionToken
+            String[] parts = message.split(" ");
+            playerId = Integer.parseInt(parts[1]);
+            if (parts.length > 2) {
+                sessionToken = parts[2];
+            }
             System.out.println("Assigned player ID: " + playerId);
 
             Platform.runLater(() -> {
                 Stage stage = (Stage) myBoardGrid.getScene().getWindow();
                 stage.setTitle("Block Battle - Player " + playerId);
             });
+        } else if (message.startsWith("RULES")) {
+            applyRules(message.substring("RULES".length()));
         } else if (message.equals("BLOCK_PLACED")) {
-            Entity.Type selectedType = lastPlacementType;
-
-            int width = 0;
-            int height = 0;
-
-            switch (selectedType) {
-                case BLOCK_2x1:
-                    width = lastPlacementHorizontal ? 2 : 1;
-                    height = lastPlacementHorizontal ? 1 : 2;
-                    break;
-                case BLOCK_3x1:
-                    width = lastPlacementHorizontal ? 3 : 1;
-                    height = lastPlacementHorizontal ? 1 : 3;
-                    break;
-                case BLOCK_4x2:
-                    width = lastPlacementHorizontal ? 4 : 2;
-                    height = lastPlacementHorizontal ? 2 : 4;
-                    break;
-                case BLOCK_5x1:
-                    width = lastPlacementHorizontal ? 5 : 1;
-                    height = lastPlacementHorizontal ? 1 : 5;
-                    break;
-                default:
-                    break;
+            Placement placement = pendingPlacements.remove(sequence);
+            if (placement == null) {
+                return; // sent before a reconnect, SYNC already has it
             }
+            // Server accepted it, so the same placement is valid on our copy of the board
+            myBoard.placeBlock(placement.row, placement.col, placement.shape, placement.rotation);
 
-            // Update block type and blockId that already place
-            int blockId = myBoard.getNextBlockId();
-            for (int r = lastPlacementRow; r < lastPlacementRow + height; r++) {
-                for (int c = lastPlacementCol; c < lastPlacementCol + width; c++) {
-                    Entity entity = myBoard.getEntity(r, c);
-                    entity.setType(selectedType);
-                    entity.setBlockId(blockId);
-                }
-            }
-            myBoard.incrementTotalBlocks();
-
-            updateBlockCount(selectedType, true); // update block count on radio
+            updateBlockCount(placement.shape, true); // update block count on radio
             refreshBoard(true); // update board UI
             statusText.setText("Block placed successfully!");
+        } else if (message.startsWith("RESUMED")) {
+            playerId = Integer.parseInt(message.split(" ")[1]);
+            System.out.println("Session resumed as player " + playerId);
+        } else if (message.startsWith("SYNC")) {
+            applySync(message.split(" "));
+        } else if (message.equals("INVALID_SESSION")) {
+            sessionToken = null;
+            showErrorAndExit("Your session has expired.");
+        } else if (message.startsWith("OPPONENT_RECONNECTING")) {
+            statusText.setText("Opponent lost connection, waiting for them to reconnect...");
+        } else if (message.equals("OPPONENT_RESUMED")) {
+            if (gameStarted) {
+                statusText.setText(myTurn ? "Opponent reconnected. Your turn!" : "Opponent reconnected. Opponent's turn");
+            } else {
+                statusText.setText("Opponent reconnected.");
+            }
         } else if (message.equals("INVALID_PLACEMENT")) {
+            pendingPlacements.remove(sequence);
             statusText.setText("Invalid block placement! Try again.");
+        } else if (message.equals("RATE_LIMITED")) {
+            pendingPlacements.remove(sequence);
+            statusText.setText("Too many requests, slow down!");
+        } else if (message.equals("REJECTED")) {
+            pendingPlacements.remove(sequence);
         } else if (message.equals("GAME_START")) {
             placementPhase = false;
             gameStarted = true;
             statusText.setText("Game started!");
         } else if (message.startsWith("TURN")) {
-            int turnPlayerId = Integer.parseInt(message.split(" ")[1]);
-            myTurn = (turnPlayerId == playerId);
-            statusText.setText(myTurn ? "Your turn!" : "Opponent's turn");
+            setTurn(Integer.parseInt(message.split(" ")[1]));
         } else if (message.startsWith("ATTACK_RESULT")) {
-            // Format: ATTACK_RESULT attackerId row col result
+            // Format: ATTACK_RESULT attackerId targetId row col result
+            String[] parts = message.split(" ");
+            applyAttackResult(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                    Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), parts[5]);
+        } else if (message.startsWith("SALVO_RESULT")) {
+            // Format: SALVO_RESULT attackerId targetId nextTurnId row col result ... (nextTurnId 0 when the game ended)
             String[] parts = message.split(" ");
             int attackerId = Integer.parseInt(parts[1]);
-            int row = Integer.parseInt(parts[2]);
-            int col = Integer.parseInt(parts[3]);
-            String result = parts[4];
-
-            boolean isMyAttack = (attackerId == playerId);
-
-            if (isMyAttack) {
-                Entity entity = opponentBoard.getEntity(row, col);
-                entity.hit();
-
-                if (result.equals("HIT") || result.equals("SINK")) {
-                    // Set a temporary blockId for tracking connected cell
-                    int tempBlockId = 100 + row * Board.SIZE + col;
-                    entity.setType(Entity.Type.BLOCK_2x1);
-                    entity.setBlockId(tempBlockId);
-                }
-
-                if (result.equals("SINK")) {
-                    entity.setSunk(true);
-
-                    showAlert("Block Sunk!", "You sunk an opponent's block!");
-
-                    opponentRemainingBlocks--;
-                    remainingBlocksText.setText("Opponent blocks remaining: " + opponentRemainingBlocks);
-                }
+            int target = Integer.parseInt(parts[2]);
+            for (int i = 4; i + 2 < parts.length; i += 3) {
+                applyAttackResult(attackerId, target, Integer.parseInt(parts[i]), Integer.parseInt(parts[i + 1]), parts[i + 2]);
+            }
 
-                updateCell(false, row, col, entity);
+            int nextTurn = Integer.parseInt(parts[3]);
+            if (nextTurn > 0) {
+                setTurn(nextTurn);
+            }
+        } else if (message.startsWith("ELIMINATED")) {
+            // Free-for-all: a player is out, the game goes on without them
+            int id = Integer.parseInt(message.split(" ")[1]);
+            eliminated[id] = true;
+            if (id == playerId) {
+                myTurn = false;
+                statusText.setText("You were eliminated! Watching the rest of the game.");
             } else {
-                // Opponent attack on my board
-                Entity entity = myBoard.getEntity(row, col);
-                entity.hit();
-
-                if (result.equals("SINK")) {
-
-                    showAlert("Block Lost!", "Your opponent sunk one of your blocks!");
+                statusText.setText("Player " + id + " was eliminated!");
+                for (Toggle toggle : targetGroup.getToggles()) {
+                    if ((Integer) toggle.getUserData() == id) {
+                        ((RadioButton) toggle).setDisable(true);
+                    }
+                }
+                if (id == targetId) {
+                    selectNextTarget();
                 }
-
-                updateCell(true, row, col, entity);
             }
         } else if (message.startsWith("GAME_OVER")) {
             // Game over notification
             int winnerId = Integer.parseInt(message.split(" ")[1]);
             boolean isWinner = (winnerId == playerId);
 
+            matchFinished = true;
             showGameOverDialog(isWinner);
 
             statusText.setText(isWinner ? "You win!" : "You lose!");
 
             gameStarted = false;
             myTurn = false;
+        } else if (message.startsWith("LEADERBOARD")) {
+            // Format: LEADERBOARD name:wins:losses:hitRate:avgGameLength,...
+            showAlert("Leaderboard", formatLeaderboard(message.substring("LEADERBOARD".length()).trim()));
         } else if (message.equals("OPPONENT_DISCONNECTED")) {
             // Opponent disconnected
+            matchFinished = true;
             statusText.setText("Opponent disconnected. Game over!");
             showAlert("Game Over", "Your opponent has disconnected from the game.");
             gameStarted = false;
@@ -524,6 +791,54 @@ public class GameClient extends Application {
         }
     }
 
+    private void setTurn(int turnPlayerId) {
+        myTurn = (turnPlayerId == playerId);
+        if (myTurn) {
+            statusText.setText("Your turn!");
+        } else {
+            statusText.setText(rules.getPlayers() > 2 ? "Player " + turnPlayerId + "'s turn" : "Opponent's turn");
+        }
+    }
+
+    // Every result is broadcast, so we also track attacks between other players
+    private void applyAttackResult(int attackerId, int target, int row, int col, String result) {
+        if (target != playerId) {
+            Entity entity = opponentBoards[target].getEntity(row, col);
+            entity.hit();
+
+            if (result.equals("HIT") || result.equals("SINK")) {
+                // Set a temporary blockId for tracking connected cell
+                int tempBlockId = 100 + row * Board.SIZE + col;
+                entity.setBlockId(tempBlockId);
+            }
+
+            if (result.equals("SINK")) {
+                entity.setSunk(true);
+                opponentRemainingBlocks[target]--;
+
+                if (attackerId == playerId) {
+                    showAlert("Block Sunk!", "You sunk an opponent's block!");
+                }
+            }
+
+            if (target == targetId) {
+                remainingBlocksText.setText("Opponent blocks remaining: " + opponentRemainingBlocks[target]);
+                updateCell(false, row, col, entity);
+            }
+        } else {
+            // Opponent attack on my board
+            Entity entity = myBoard.getEntity(row, col);
+            entity.hit();
+
+            if (result.equals("SINK")) {
+
+                showAlert("Block Lost!", "Your opponent sunk one of your blocks!");
+            }
+
+            updateCell(true, row, col, entity);
+        }
+    }
+
     private void showGameOverDialog(boolean isWinner) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("Game Over");
@@ -538,6 +853,22 @@ public class GameClient extends Application {
         alert.showAndWait();
     }
 
+    private String formatLeaderboard(String entries) {
+        if (entries.isEmpty()) {
+            return "No games recorded yet.";
+        }
+        StringBuilder sb = new StringBuilder();
+        int rank = 1;
+        for (String entry : entries.split(",")) {
+            String[] fields = entry.split(":");
+            sb.append(rank++).append(". ").append(fields[0])
+                    .append(" - ").append(fields[1]).append(" W / ").append(fields[2]).append(" L")
+                    .append(", ").append(fields[3]).append("% hits")
+                    .append(", ").append(fields[4]).append(" shots per game\n");
+        }
+        return sb.toString();
+    }
+
     private void showAlert(String title, String message) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
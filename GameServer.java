@@ -1,48 +1,253 @@
 import java.io.*;
 import java.net.*;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class GameServer {
     private static final int PORT = 8080;
+    private static final String GUEST_NAME = "guest"; // JOIN without a name, never gets stats
+    private static final int ADMIN_PORT_OFFSET = 1000; // admin listener on port + 1000 unless given
+    private static final int GRACE_PERIOD_SECONDS = 30; // how long a dropped player may resume
+    private static final int MAX_EVENTS_PER_RUN = 64; // events a match handles before yielding its worker
+    // Per-connection limits, so one misbehaving client cannot slow down other matches
+    private static final int COMMANDS_PER_SECOND = 20;
+    private static final int COMMAND_BURST = 40;
+    private static final int MAX_LINE_LENGTH = 256;
+    private static final int MAX_IN_FLIGHT = 16; // commands waiting in the match inbox
+    private static final int OUTBOX_CAPACITY = 256; // unsent messages before a client counts as too slow
+    private static final int POOLED_BOARDS_PER_STRIPE = 64; // idle boards kept per pool stripe
+    private static final int EXPORT_MAGIC = 0x42425831; // "BBX1"
+    private static final int EXPORT_ROW_GROUP = 1024; // matches per row group
+    private static final int EXPORT_CHUNK_BYTES = 48 * 1024; // export bytes per EXPORT_DATA line, multiple of 3 for base64
+    private static final int EXPORT_SEND_TIMEOUT_SECONDS = 10;
+    private static final EncodedLine CLOSE_MARKER = new EncodedLine("CLOSE"); // compared by identity in the outbox
     private ServerSocket serverSocket;
-    private ExecutorService pool;
-    private Socket player1;
-    private Socket player2;
-    private GameState gameState;
+    private ServerSocket adminSocket; // bound to 127.0.0.1 only, serves SNAPSHOT and EXPORT
+    private ExecutorService pool; // one reader thread per connection
+    private ExecutorService matchExecutor; // runs match event loops, one worker per core
+    private ScheduledExecutorService scheduler;
+    private final SecureRandom random = new SecureRandom();
+    private final int port;
+    private final int adminPort;
+    private final String nodeId; // prefix of every session token, lets a gateway route RESUME back here
+    private final String rulesPath;
+    private Rules rules; // loaded once by open(), every match on this node plays by them
+    private StatsStore stats; // null when stats are turned off
+    private boolean keepStats = true;
+    private volatile boolean logCommands = true;
+
+    private final AtomicInteger nextMatchId = new AtomicInteger(1);
+    private final AtomicReference<Match> openMatch = new AtomicReference<>(); // match still waiting for players
+    private final Map<Integer, Match> matches = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final BoardPool boardPool = new BoardPool(Runtime.getRuntime().availableProcessors());
 
     private static class GameState {
         Board[] boards;
         int currentPlayer;
         boolean gameOver;
         boolean[] playersReady;
+        boolean[] forfeited; // left a started game and did not come back
+        boolean[] reconnecting; // dropped and still inside the grace period
+        int[] drops; // disconnects per slot, an expiry timer only counts for the drop that started it
+        PlayerHandler[] players; // null while the slot is empty or disconnected
+        String[] sessionTokens; // issued on JOIN, used by RESUME
+        String[] names;
+        int[] shots;
+        int[] hits;
+        int moves;
 
-        public GameState() {
-            boards = new Board[2];
-            boards[0] = new Board();
-            boards[1] = new Board();
+        public GameState(int playerCount, BoardPool boardPool) {
+            boards = new Board[playerCount];
+            for (int i = 0; i < playerCount; i++) {
+                boards[i] = boardPool.acquire();
+            }
             currentPlayer = 0;
             gameOver = false;
-            playersReady = new boolean[2];
+            playersReady = new boolean[playerCount];
+            forfeited = new boolean[playerCount];
+            reconnecting = new boolean[playerCount];
+            drops = new int[playerCount];
+            players = new PlayerHandler[playerCount];
+            sessionTokens = new String[playerCount];
+            names = new String[playerCount];
+            shots = new int[playerCount];
+            hits = new int[playerCount];
+            moves = 0;
+        }
+    }
+
+    // Read-only copy of one match. A match builds a new one on its own event loop after every batch
+    // of events and publishes it through a volatile field (copy-on-write), so admin queries see a
+    // consistent state without locking and never delay a turn.
+    private static final class MatchSnapshot {
+        static final String[] PHASES = {"PLACEMENT", "PLAYING", "OVER"};
+
+        final int matchId;
+        final long version; // batches of events the match had handled
+        final int phase; // index into PHASES
+        final int currentPlayer;
+        final int moves;
+        final boolean[] ready;
+        final boolean[] eliminated;
+        final int[] totalBlocks;
+        final int[] sunkBlocks;
+        final long[][] blockCells; // [player] cell masks, see Board
+        final long[][] hitCells;
+        final long[][] sunkCells;
+
+        MatchSnapshot(int matchId, long version, int phase, GameState state, boolean[] eliminated) {
+            int players = state.boards.length;
+            this.matchId = matchId;
+            this.version = version;
+            this.phase = phase;
+            this.currentPlayer = state.currentPlayer;
+            this.moves = state.moves;
+            this.ready = state.playersReady.clone();
+            this.eliminated = eliminated;
+            this.totalBlocks = new int[players];
+            this.sunkBlocks = new int[players];
+            this.blockCells = new long[players][];
+            this.hitCells = new long[players][];
+            this.sunkCells = new long[players][];
+            for (int i = 0; i < players; i++) {
+                Board board = state.boards[i];
+                totalBlocks[i] = board.getTotalBlocks();
+                sunkBlocks[i] = board.getSunkBlocks();
+                blockCells[i] = board.copyBlockCells();
+                hitCells[i] = board.copyHitCells();
+                sunkCells[i] = board.copySunkCells();
+            }
+        }
+
+        int players() {
+            return ready.length;
+        }
+
+        // Format: SNAPSHOT matchId version phase turn moves board ...
+        // with one board per player: id:ready(0/1):eliminated(0/1):blocks:hits:sunk:sunkBlocks/totalBlocks
+        String toLine() {
+            StringBuilder sb = new StringBuilder("SNAPSHOT ").append(matchId).append(' ').append(version)
+                    .append(' ').append(PHASES[phase]).append(' ').append(currentPlayer + 1).append(' ').append(moves);
+            for (int i = 0; i < players(); i++) {
+                sb.append(' ').append(i + 1)
+                        .append(':').append(ready[i] ? 1 : 0)
+                        .append(':').append(eliminated[i] ? 1 : 0)
+                        .append(':').append(Board.encodeMask(BitSet.valueOf(blockCells[i])))
+                        .append(':').append(Board.encodeMask(BitSet.valueOf(hitCells[i])))
+                        .append(':').append(Board.encodeMask(BitSet.valueOf(sunkCells[i])))
+                        .append(':').append(sunkBlocks[i]).append('/').append(totalBlocks[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    // Boards of closed matches, handed to new ones so starting a match does not allocate grids.
+    // Matches are created on connection threads and closed on match workers, so instead of
+    // thread-local pools the boards are spread over a few bounded stripes picked at random.
+    private static class BoardPool {
+        private final List<BlockingQueue<Board>> stripes = new ArrayList<>();
+
+        BoardPool(int stripeCount) {
+            for (int i = 0; i < stripeCount; i++) {
+                stripes.add(new ArrayBlockingQueue<>(POOLED_BOARDS_PER_STRIPE));
+            }
+        }
+
+        Board acquire() {
+            int first = ThreadLocalRandom.current().nextInt(stripes.size());
+            for (int i = 0; i < stripes.size(); i++) {
+                Board board = stripes.get((first + i) % stripes.size()).poll();
+                if (board != null) {
+                    return board;
+                }
+            }
+            return new Board();
+        }
+
+        // The caller must not touch the board afterwards
+        void release(Board board) {
+            board.reset();
+            int stripe = ThreadLocalRandom.current().nextInt(stripes.size());
+            stripes.get(stripe).offer(board); // dropped when the stripe is full
+        }
+    }
+
+    // Where a session token points to
+    private static class Session {
+        final Match match;
+        final int playerId;
+
+        Session(Match match, int playerId) {
+            this.match = match;
+            this.playerId = playerId;
+        }
+    }
+
+    public GameServer(int port, String nodeId, String rulesPath) {
+        this(port, port + ADMIN_PORT_OFFSET, nodeId, rulesPath);
+    }
+
+    public GameServer(int port, int adminPort, String nodeId, String rulesPath) {
+        this.port = port;
+        this.adminPort = adminPort;
+        this.nodeId = nodeId;
+        this.rulesPath = rulesPath;
+    }
+
+    // Set up matches, rules and stats without listening, enough for connectLocal()
+    public void open() throws IOException {
+        pool = Executors.newCachedThreadPool();
+        matchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        rules = new File(rulesPath).exists() ? Rules.load(rulesPath) : Rules.defaults();
+        if (keepStats) {
+            stats = new StatsStore("stats-" + nodeId + ".dat");
+            Runtime.getRuntime().addShutdownHook(new Thread(stats::close));
         }
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(PORT);
-            pool = Executors.newFixedThreadPool(2);
-            gameState = new GameState();
+            open();
+            serverSocket = new ServerSocket(port);
+            adminSocket = new ServerSocket(adminPort, 50, InetAddress.getLoopbackAddress());
+            pool.execute(this::acceptAdmins);
 
-            System.out.println("Block Battle Server started on port " + PORT);
+            System.out.println("Block Battle Server " + nodeId + " started on port " + port
+                    + " (admin on 127.0.0.1:" + adminPort + ")");
             System.out.println("Waiting for players to connect...");
 
-            player1 = serverSocket.accept();
-            System.out.println("Player 1 connected: " + player1.getInetAddress());
-            pool.execute(new PlayerHandler(player1, 0));
-
-            player2 = serverSocket.accept();
-            System.out.println("Player 2 connected: " + player2.getInetAddress());
-            pool.execute(new PlayerHandler(player2, 1));
+            // Keep accepting so dropped players can come back with RESUME
+            while (true) {
+                Socket socket = serverSocket.accept();
+                try {
+                    pool.execute(new PlayerHandler(new TcpConnection(socket), true, false));
+                } catch (IOException e) {
+                    System.err.println("Error setting up connection: " + e.getMessage());
+                    socket.close();
+                }
+            }
 
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
@@ -50,132 +255,1064 @@ public class GameServer {
         }
     }
 
-    // Handles communication with client
-    private class PlayerHandler implements Runnable {
-        private Socket socket;
-        private int playerId;
-        private BufferedReader in;
-        private PrintWriter out;
+    // Admin queries never share the player port: the gateway relays players from this same machine,
+    // so the peer address cannot tell an admin from a player
+    private void acceptAdmins() {
+        try {
+            while (true) {
+                Socket socket = adminSocket.accept();
+                try {
+                    pool.execute(new PlayerHandler(new TcpConnection(socket), false, true));
+                } catch (IOException e) {
+                    System.err.println("Error setting up admin connection: " + e.getMessage());
+                    socket.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Admin listener error: " + e.getMessage());
+        }
+    }
 
-        public PlayerHandler(Socket socket, int playerId) {
-            this.socket = socket;
-            this.playerId = playerId;
-            try {
-                this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    public Rules getRules() {
+        return rules;
+    }
 
-                this.out = new PrintWriter(socket.getOutputStream(), true);
+    // Call before open(). Without stats results are not recorded and the leaderboard stays empty.
+    public void setKeepStats(boolean keepStats) {
+        this.keepStats = keepStats;
+    }
 
-                // Send player ID to client
-                out.println("PLAYER " + (playerId + 1));
+    private String leaderboard() {
+        return stats == null ? "" : stats.getLeaderboard();
+    }
 
-            } catch (IOException e) {
-                System.err.println("Error setting up player " + (playerId + 1) + ": " + e.getMessage());
+    public void setLogCommands(boolean logCommands) {
+        this.logCommands = logCommands;
+    }
+
+    // Latest snapshot of a live match as a SNAPSHOT line, null if there is no such match
+    public String snapshot(int matchId) {
+        Match match = matches.get(matchId);
+        MatchSnapshot snapshot = match == null ? null : match.snapshot;
+        return snapshot == null ? null : snapshot.toLine();
+    }
+
+    // Writes every live match in the columnar export format, one row group at a time so memory stays
+    // bounded however many matches are running. Returns the number of matches written.
+    //
+    // Format, big-endian: int magic "BBX1", row groups, then an int 0.
+    // Row group: int rows, int boards, then one column after the other:
+    //   per match:  int matchId, long version, byte phase (0 placement, 1 playing, 2 over),
+    //               byte turn (player id), int moves, byte players
+    //   per board, in match order and player order within a match:
+    //               byte ready, byte eliminated, byte totalBlocks, byte sunkBlocks,
+    //               then Board.MASK_WORDS longs each for block, hit and sunk cells
+    public int exportMatches(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(EXPORT_MAGIC);
+
+        int exported = 0;
+        List<MatchSnapshot> group = new ArrayList<>(EXPORT_ROW_GROUP);
+        for (Match match : matches.values()) {
+            MatchSnapshot snapshot = match.snapshot;
+            if (snapshot == null) {
+                continue;
+            }
+            group.add(snapshot);
+            if (group.size() == EXPORT_ROW_GROUP) {
+                writeRowGroup(data, group);
+                exported += group.size();
+                group.clear();
+            }
+        }
+        if (!group.isEmpty()) {
+            writeRowGroup(data, group);
+            exported += group.size();
+        }
+
+        data.writeInt(0);
+        data.flush();
+        return exported;
+    }
+
+    private static void writeRowGroup(DataOutputStream data, List<MatchSnapshot> group) throws IOException {
+        int boards = 0;
+        for (MatchSnapshot snapshot : group) {
+            boards += snapshot.players();
+        }
+        data.writeInt(group.size());
+        data.writeInt(boards);
+
+        for (MatchSnapshot snapshot : group) {
+            data.writeInt(snapshot.matchId);
+        }
+        for (MatchSnapshot snapshot : group) {
+            data.writeLong(snapshot.version);
+        }
+        for (MatchSnapshot snapshot : group) {
+            data.writeByte(snapshot.phase);
+        }
+        for (MatchSnapshot snapshot : group) {
+            data.writeByte(snapshot.currentPlayer + 1);
+        }
+        for (MatchSnapshot snapshot : group) {
+            data.writeInt(snapshot.moves);
+        }
+        for (MatchSnapshot snapshot : group) {
+            data.writeByte(snapshot.players());
+        }
+
+        for (MatchSnapshot snapshot : group) {
+            for (boolean ready : snapshot.ready) {
+                data.writeByte(ready ? 1 : 0);
+            }
+        }
+        for (MatchSnapshot snapshot : group) {
+            for (boolean eliminated : snapshot.eliminated) {
+                data.writeByte(eliminated ? 1 : 0);
+            }
+        }
+        for (MatchSnapshot snapshot : group) {
+            for (int total : snapshot.totalBlocks) {
+                data.writeByte(total);
+            }
+        }
+        for (MatchSnapshot snapshot : group) {
+            for (int sunk : snapshot.sunkBlocks) {
+                data.writeByte(sunk);
+            }
+        }
+        writeMaskColumn(data, group, 0);
+        writeMaskColumn(data, group, 1);
+        writeMaskColumn(data, group, 2);
+    }
+
+    // kind: 0 block cells, 1 hit cells, 2 sunk cells
+    private static void writeMaskColumn(DataOutputStream data, List<MatchSnapshot> group, int kind) throws IOException {
+        for (MatchSnapshot snapshot : group) {
+            long[][] masks = kind == 0 ? snapshot.blockCells : kind == 1 ? snapshot.hitCells : snapshot.sunkCells;
+            for (long[] mask : masks) {
+                for (long word : mask) {
+                    data.writeLong(word);
+                }
+            }
+        }
+    }
+
+    // In-process client end, speaks the same protocol as a TCP client. Local code is trusted,
+    // so these connections are not rate limited.
+    public Connection connectLocal() {
+        LoopbackConnection[] ends = LoopbackConnection.pair();
+        pool.execute(new PlayerHandler(ends[0], false, false));
+        return ends[1];
+    }
+
+    private String newSessionToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(nodeId).append('-');
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // Put a new player into the open match, opening a new one once it is full
+    private void joinMatch(PlayerHandler handler, String name) {
+        while (true) {
+            Match match = openMatch.get();
+            if (match != null) {
+                int slot = match.claimSlot();
+                if (slot >= 0) {
+                    String token = newSessionToken();
+                    handler.match = match;
+                    handler.playerId = slot;
+                    sessions.put(token, new Session(match, slot));
+                    match.submit(() -> match.join(handler, token, name));
+                    return;
+                }
+            }
+
+            Match fresh = new Match(nextMatchId.getAndIncrement(), rules);
+            if (openMatch.compareAndSet(match, fresh)) {
+                matches.put(fresh.id, fresh);
+            } else {
+                fresh.releaseBoards(); // another join opened a match first, nobody has seen this one
+            }
+        }
+    }
+
+    // A single match. Its GameState is only read and written by its own event loop:
+    // connection threads post events to the inbox and at most one worker drains it at a time.
+    private class Match implements Runnable {
+        final int id;
+        final Rules rules;
+        private final GameState gameState;
+        // One bit per slot. Once every bit is set the match is full for good, until then a player
+        // who leaves gives the slot back (freeSlot), so the next JOIN does not pair with someone absent.
+        private final AtomicLong takenSlots = new AtomicLong();
+        private final long allSlots;
+        private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private String replyTag; // "#seq" of the command being handled, until its reply is sent
+        private boolean closed; // boards went back to the pool
+        private volatile MatchSnapshot snapshot; // read by admin queries from any thread
+        private long version;
+
+        Match(int id, Rules rules) {
+            this.id = id;
+            this.rules = rules;
+            this.gameState = new GameState(rules.getPlayers(), boardPool);
+            this.allSlots = rules.getPlayers() == 64 ? -1L : (1L << rules.getPlayers()) - 1;
+        }
+
+        // Safe from any thread, -1 when the match is full
+        int claimSlot() {
+            while (true) {
+                long taken = takenSlots.get();
+                if (taken == allSlots) {
+                    return -1;
+                }
+                int slot = Long.numberOfTrailingZeros(~taken);
+                if (takenSlots.compareAndSet(taken, taken | (1L << slot))) {
+                    return slot;
+                }
+            }
+        }
+
+        // Players in this match while it still has free slots, 0 once it is full
+        int waitingPlayers() {
+            long taken = takenSlots.get();
+            return taken == allSlots ? 0 : Long.bitCount(taken);
+        }
+
+        // False when the match filled up meanwhile, then the slot stays taken
+        private boolean freeSlot(int slot) {
+            while (true) {
+                long taken = takenSlots.get();
+                if (taken == allSlots) {
+                    return false;
+                }
+                if (takenSlots.compareAndSet(taken, taken & ~(1L << slot))) {
+                    return true;
+                }
+            }
+        }
+
+        // Safe from any thread
+        void submit(Runnable event) {
+            inbox.offer(event);
+            if (scheduled.compareAndSet(false, true)) {
+                matchExecutor.execute(this);
             }
         }
 
         @Override
         public void run() {
-            try {
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    handleCommand(inputLine);
-                }
-            } catch (IOException e) {
-                System.err.println("Connection lost with player " + (playerId + 1) + ": " + e.getMessage());
-            } finally {
+            int processed = 0;
+            Runnable event;
+            while (processed < MAX_EVENTS_PER_RUN && (event = inbox.poll()) != null) {
                 try {
-                    socket.close();
-                } catch (IOException e) {
-                    System.err.println("Error closing socket: " + e.getMessage());
+                    event.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Match " + id + " rejected event: " + e);
                 }
+                processed++;
+            }
+            if (processed > 0 && !closed) {
+                publishSnapshot();
+            }
 
-                // If a player disconnects, notify the other player
-                Socket otherSocket = (playerId == 0) ? player2 : player1;
-                if (otherSocket != null && !otherSocket.isClosed()) {
-                    try {
-                        PrintWriter otherOut = new PrintWriter(otherSocket.getOutputStream(), true);
-                        otherOut.println("OPPONENT_DISCONNECTED");
-                    } catch (IOException e) {
-                        System.err.println("Could not notify opponent disconnection " + e.getMessage());
+            scheduled.set(false);
+            // Pick up events that arrived after the last poll, or that did not fit in this run
+            if (!inbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+                matchExecutor.execute(this);
+            }
+        }
+
+        private void publishSnapshot() {
+            boolean started = allReady();
+            boolean[] eliminated = new boolean[gameState.boards.length];
+            for (int i = 0; i < eliminated.length; i++) {
+                eliminated[i] = started && isEliminated(i);
+            }
+            int phase = gameState.gameOver ? 2 : started ? 1 : 0;
+            snapshot = new MatchSnapshot(id, ++version, phase, gameState, eliminated);
+        }
+
+        private void sendTo(int playerId, EncodedLine line) {
+            PlayerHandler player = gameState.players[playerId];
+            if (player != null) {
+                player.send(line);
+            }
+        }
+
+        private void sendTo(int playerId, String message) {
+            sendTo(playerId, new EncodedLine(message));
+        }
+
+        private void broadcastToAll(String message) {
+            broadcastToOthers(-1, message);
+        }
+
+        // Encoded once, every outbox gets the same line.
+        // Disconnected players catch up through SYNC when they resume.
+        private void broadcastToOthers(int skippedId, String message) {
+            EncodedLine line = new EncodedLine(message);
+            for (int i = 0; i < gameState.players.length; i++) {
+                if (i != skippedId) {
+                    sendTo(i, line);
+                }
+            }
+        }
+
+        // The answer to the current command, tagged with its sequence number if it had one
+        private void reply(int playerId, String message) {
+            sendTo(playerId, tagged(replyTag, message));
+            replyTag = null;
+        }
+
+        // Like broadcastToAll, but the sender's copy is the reply to its command
+        private void broadcastReply(int playerId, String message) {
+            if (replyTag == null) {
+                broadcastToAll(message);
+            } else {
+                broadcastToOthers(playerId, message);
+                reply(playerId, message);
+            }
+        }
+
+        private boolean allReady() {
+            for (boolean ready : gameState.playersReady) {
+                if (!ready) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isEliminated(int playerId) {
+            return gameState.forfeited[playerId] || gameState.boards[playerId].allBlocksSunk();
+        }
+
+        private int playersLeft() {
+            int left = 0;
+            for (int i = 0; i < gameState.boards.length; i++) {
+                if (!isEliminated(i)) {
+                    left++;
+                }
+            }
+            return left;
+        }
+
+        // Turn order goes round the table and skips eliminated players
+        private int nextInPlay(int playerId) {
+            int count = gameState.boards.length;
+            for (int i = 1; i < count; i++) {
+                int next = (playerId + i) % count;
+                if (!isEliminated(next)) {
+                    return next;
+                }
+            }
+            return playerId;
+        }
+
+        void join(PlayerHandler handler, String token, String name) {
+            int playerId = handler.playerId;
+            if (gameState.gameOver || closed) {
+                // Match was abandoned before it filled up, try the next one
+                sessions.remove(token);
+                joinMatch(handler, name);
+                return;
+            }
+
+            gameState.players[playerId] = handler;
+            gameState.sessionTokens[playerId] = token;
+            gameState.names[playerId] = name;
+
+            // Send player ID and session token to client
+            handler.send("PLAYER " + (playerId + 1) + " " + token);
+            handler.send("RULES " + rules.toWire());
+            for (int i = 0; i < gameState.reconnecting.length; i++) {
+                if (gameState.reconnecting[i]) {
+                    // Dropped after the match filled up but before this join got here
+                    handler.send("OPPONENT_RECONNECTING " + GRACE_PERIOD_SECONDS + " " + (i + 1));
+                }
+            }
+            System.out.println("Match " + id + ": player " + (playerId + 1) + " joined");
+        }
+
+        void resume(PlayerHandler handler, String token) {
+            int playerId = handler.playerId;
+            if (!token.equals(gameState.sessionTokens[playerId])) {
+                handler.send("INVALID_SESSION");
+                handler.close();
+                return;
+            }
+
+            PlayerHandler stale = gameState.players[playerId];
+            if (stale != null) {
+                // Client noticed the drop before we did, retire the old socket
+                stale.close();
+            }
+
+            gameState.players[playerId] = handler;
+            gameState.reconnecting[playerId] = false;
+            handler.send("RESUMED " + (playerId + 1));
+            handler.send("RULES " + rules.toWire());
+            handler.send(buildSync(playerId));
+            broadcastToOthers(playerId, "OPPONENT_RESUMED");
+            System.out.println("Match " + id + ": player " + (playerId + 1) + " resumed session");
+        }
+
+        // Called when a player's connection ends, keeps the slot open for the grace period
+        void playerDisconnected(PlayerHandler handler) {
+            int playerId = handler.playerId;
+
+            if (gameState.players[playerId] != handler) {
+                return; // already replaced by a resumed connection
+            }
+            gameState.players[playerId] = null;
+            System.out.println("Match " + id + ": player " + (playerId + 1) + " disconnected");
+
+            if (!gameState.gameOver && !allReady() && freeSlot(playerId)) {
+                // Still waiting for players: forget this one instead of holding the slot for a resume
+                sessions.remove(gameState.sessionTokens[playerId]);
+                gameState.sessionTokens[playerId] = null;
+                gameState.names[playerId] = null;
+                gameState.playersReady[playerId] = false;
+                gameState.boards[playerId].reset();
+                System.out.println("Match " + id + ": slot " + (playerId + 1) + " is free again");
+                return;
+            }
+
+            if (gameState.gameOver) {
+                broadcastToAll("OPPONENT_DISCONNECTED");
+                closeIfAbandoned();
+                return;
+            }
+
+            String token = gameState.sessionTokens[playerId];
+            int drop = ++gameState.drops[playerId];
+            gameState.reconnecting[playerId] = true;
+            // Format: OPPONENT_RECONNECTING seconds playerId
+            broadcastToAll("OPPONENT_RECONNECTING " + GRACE_PERIOD_SECONDS + " " + (playerId + 1));
+            scheduler.schedule(() -> submit(() -> expireSession(playerId, token, drop)),
+                    GRACE_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private void expireSession(int playerId, String token, int drop) {
+            if (gameState.players[playerId] != null || !token.equals(gameState.sessionTokens[playerId])
+                    || gameState.drops[playerId] != drop) {
+                return; // player came back in time, or dropped again and has a new grace period
+            }
+            gameState.sessionTokens[playerId] = null;
+            gameState.reconnecting[playerId] = false;
+            sessions.remove(token);
+
+            if (!gameState.gameOver && !allReady()) {
+                // The match cannot start without them
+                gameState.gameOver = true;
+                broadcastToAll("OPPONENT_DISCONNECTED");
+            } else if (!gameState.gameOver) {
+                gameState.forfeited[playerId] = true; // leaving a started game counts as a loss
+                if (playersLeft() == 1) {
+                    int winnerId = nextInPlay(playerId);
+                    gameState.gameOver = true;
+                    broadcastToAll("OPPONENT_DISCONNECTED");
+                    broadcastToAll("GAME_OVER " + (winnerId + 1));
+                    recordResult(winnerId);
+                    System.out.println("Match " + id + " GAME_OVER : PlAYER " + (winnerId + 1) + " WIN!");
+                } else {
+                    broadcastToAll("ELIMINATED " + (playerId + 1));
+                    if (gameState.currentPlayer == playerId) {
+                        gameState.currentPlayer = nextInPlay(playerId);
+                        broadcastToAll("TURN " + (gameState.currentPlayer + 1));
                     }
                 }
+            }
+            openMatch.compareAndSet(this, null);
+            System.out.println("Match " + id + ": player " + (playerId + 1) + " session expired");
+            closeIfAbandoned();
+        }
+
+        // Hand the result to the stats store, which writes it in the background.
+        // Guests and names that appear twice in the match would count one game as both a win and a loss.
+        private void recordResult(int winnerId) {
+            if (stats == null) {
+                return;
+            }
+            for (int i = 0; i < gameState.names.length; i++) {
+                String name = gameState.names[i];
+                if (name == null || name.equals(GUEST_NAME) || countName(name) > 1) {
+                    continue;
+                }
+                stats.recordResult(name, i == winnerId, gameState.shots[i], gameState.hits[i], gameState.moves);
+            }
+        }
+
+        private int countName(String name) {
+            int count = 0;
+            for (String other : gameState.names) {
+                if (name.equals(other)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // Forget a match once nobody is connected to it and nobody can still resume into it
+        private void closeIfAbandoned() {
+            if (closed) {
+                return;
+            }
+            for (int i = 0; i < gameState.players.length; i++) {
+                if (gameState.players[i] != null || gameState.reconnecting[i]) {
+                    return;
+                }
+            }
+            closed = true;
+            for (int i = 0; i < gameState.sessionTokens.length; i++) {
+                if (gameState.sessionTokens[i] != null) {
+                    sessions.remove(gameState.sessionTokens[i]);
+                    gameState.sessionTokens[i] = null; // a RESUME already on its way is refused
+                }
+            }
+            matches.remove(id);
+
+            // Nothing reaches the boards any more, they can go to the next match
+            releaseBoards();
+        }
 
-                System.out.println("Player " + (playerId + 1) + " disconnected");
+        void releaseBoards() {
+            for (int i = 0; i < gameState.boards.length; i++) {
+                boardPool.release(gameState.boards[i]);
+                gameState.boards[i] = null;
             }
         }
 
-        private void handleCommand(String command) {
-            System.out.println("Player " + (playerId + 1) + " sent: " + command);
+        // Compact view of the match for one player: bit masks instead of an event replay
+        // Format: SYNC phase turn ownBlocks ownHits placed opponent ...
+        // with one opponent entry per other player: id:hits:blockHits:sunk:sunkCount:eliminated(0/1)
+        private String buildSync(int playerId) {
+            Board own = gameState.boards[playerId];
+
+            String phase;
+            if (gameState.gameOver) {
+                phase = "OVER";
+            } else if (allReady()) {
+                phase = "PLAYING";
+            } else if (gameState.playersReady[playerId]) {
+                phase = "READY";
+            } else {
+                phase = "PLACEMENT";
+            }
 
+            StringBuilder placed = new StringBuilder();
+            for (Shape shape : rules.getShapes()) {
+                int count = own.countBlocks(shape);
+                if (count > 0) {
+                    if (placed.length() > 0) {
+                        placed.append(',');
+                    }
+                    placed.append(shape.getName()).append('=').append(count);
+                }
+            }
+
+            StringBuilder sync = new StringBuilder("SYNC ").append(phase)
+                    .append(' ').append(gameState.currentPlayer + 1)
+                    .append(' ').append(Board.encodeMask(own.mask(Entity::isBlock)))
+                    .append(' ').append(Board.encodeMask(own.mask(Entity::isHit)))
+                    .append(' ').append(placed.length() > 0 ? placed : "-");
+            for (int i = 0; i < gameState.boards.length; i++) {
+                if (i == playerId) {
+                    continue;
+                }
+                Board opponent = gameState.boards[i];
+                sync.append(' ').append(i + 1)
+                        .append(':').append(Board.encodeMask(opponent.mask(Entity::isHit)))
+                        .append(':').append(Board.encodeMask(opponent.mask(e -> e.isHit() && e.isBlock())))
+                        .append(':').append(Board.encodeMask(opponent.mask(Entity::isSunk)))
+                        .append(':').append(opponent.getSunkBlocks())
+                        .append(':').append(allReady() && isEliminated(i) ? 1 : 0);
+            }
+            return sync.toString();
+        }
+
+        // 0-3 quarter turns clockwise, true / false still mean horizontal / vertical
+        private int parseRotation(String value) {
+            if (value.equals("true")) {
+                return 0;
+            } else if (value.equals("false")) {
+                return 1;
+            }
+            return Integer.parseInt(value);
+        }
+
+        // A tagged command always gets exactly one tagged reply, REJECTED if it had no effect
+        void handleCommand(PlayerHandler handler, String tag, String command) {
+            int playerId = handler.playerId;
+            if (gameState.players[playerId] != handler) {
+                // Stale connection: the seat has moved on, but a tagged command still gets its answer
+                if (tag != null) {
+                    handler.send(tagged(tag, "REJECTED"));
+                }
+                return;
+            }
+            if (logCommands) {
+                System.out.println("Match " + id + ": player " + (playerId + 1) + " sent: " + command);
+            }
+
+            replyTag = tag;
+            try {
+                executeCommand(playerId, command);
+            } finally {
+                if (replyTag != null) {
+                    reply(playerId, "REJECTED");
+                }
+            }
+        }
+
+        private void executeCommand(int playerId, String command) {
             if (command.startsWith("PLACE_BLOCK")) {
-                // Format: PLACE_BLOCK row col type orientation
+                // Format: PLACE_BLOCK row col shape rotation
                 String[] parts = command.split(" ");
                 if (parts.length == 5) {
                     int row = Integer.parseInt(parts[1]);
                     int col = Integer.parseInt(parts[2]);
-                    Entity.Type type = Entity.Type.valueOf(parts[3]);
-                    boolean horizontal = Boolean.parseBoolean(parts[4]);
+                    Shape shape = rules.getShape(parts[3]);
+                    int rotation = parseRotation(parts[4]);
+                    Board board = gameState.boards[playerId];
 
-                    boolean placed = gameState.boards[playerId].placeBlock(row, col, type, horizontal); // place block
-                    out.println(placed ? "BLOCK_PLACED" : "INVALID_PLACEMENT");
+                    boolean placed = shape != null
+                            && board.countBlocks(shape) < rules.getCount(shape)
+                            && board.placeBlock(row, col, shape, rotation); // place block
+                    reply(playerId, placed ? "BLOCK_PLACED" : "INVALID_PLACEMENT");
                 }
+            } else if (command.equals("LEADERBOARD")) {
+                reply(playerId, "LEADERBOARD " + leaderboard());
             } else if (command.equals("READY")) {
+                if (gameState.playersReady[playerId]) {
+                    return; // a repeated READY must not start the game twice
+                }
+                if (!fleetPlaced(gameState.boards[playerId])) {
+                    // Without every block a player could never be eliminated
+                    reply(playerId, "INVALID_PLACEMENT");
+                    return;
+                }
                 gameState.playersReady[playerId] = true;
+                if (replyTag != null) {
+                    reply(playerId, "OK"); // untagged READY never had a reply
+                }
 
-                if (gameState.playersReady[0] && gameState.playersReady[1]) {
+                if (allReady()) {
                     // player 0 start first
                     broadcastToAll("GAME_START");
                     broadcastToAll("TURN 1");
                 }
+            } else if (command.startsWith("ATTACK_MULTI")) {
+                if (canAttack(playerId)) {
+                    // Format: ATTACK_MULTI row col [row col ...] [targetId], up to shotsPerTurn targets
+                    String[] parts = command.split(" ");
+                    int arguments = parts.length - 1;
+                    int shots = arguments / 2;
+                    int targetId = parseTarget(playerId, parts, arguments % 2 == 1);
+                    if (shots >= 1 && shots <= rules.getShotsPerTurn() && isValidTarget(playerId, targetId)) {
+                        // Check every cell before firing, a salvo applies entirely or not at all
+                        int[] cells = new int[shots];
+                        for (int i = 0; i < shots; i++) {
+                            int row = Integer.parseInt(parts[1 + i * 2]);
+                            int col = Integer.parseInt(parts[2 + i * 2]);
+                            if (row < 0 || row >= Board.SIZE || col < 0 || col >= Board.SIZE) {
+                                return;
+                            }
+                            cells[i] = row * Board.SIZE + col;
+                            for (int j = 0; j < i; j++) {
+                                if (cells[j] == cells[i]) {
+                                    return; // same cell twice
+                                }
+                            }
+                        }
+
+                        // Resolve the whole salvo, then report it and the next turn in one message
+                        StringBuilder results = new StringBuilder();
+                        for (int i = 0; i < shots; i++) {
+                            int row = cells[i] / Board.SIZE;
+                            int col = cells[i] % Board.SIZE;
+                            int result = fireShot(playerId, targetId, row, col);
+                            results.append(' ').append(row).append(' ').append(col).append(' ').append(resultName(result));
+                            if (gameState.boards[targetId].allBlocksSunk()) {
+                                break; // rest of the salvo is not needed
+                            }
+                        }
+
+                        boolean won = playersLeft() == 1;
+                        int nextTurn = won ? 0 : nextInPlay(playerId) + 1;
+                        // Format: SALVO_RESULT attackerId targetId nextTurnId row col result ... (nextTurnId 0 when the game ended)
+                        broadcastReply(playerId, "SALVO_RESULT " + (playerId + 1) + " " + (targetId + 1) + " " + nextTurn + results);
+                        endTurn(playerId, targetId, false);
+                    }
+                }
             } else if (command.startsWith("ATTACK")) {
-                if (gameState.currentPlayer == playerId && !gameState.gameOver) {
-                    // Format: ATTACK row col
+                if (canAttack(playerId)) {
+                    // Format: ATTACK row col [targetId]
                     String[] parts = command.split(" ");
-                    if (parts.length == 3) {
+                    int targetId = parseTarget(playerId, parts, parts.length == 4);
+                    if ((parts.length == 3 || parts.length == 4) && isValidTarget(playerId, targetId)) {
                         int row = Integer.parseInt(parts[1]);
                         int col = Integer.parseInt(parts[2]);
 
-                        // Apply attack to opponent's board
-                        int opponentId = (playerId == 0) ? 1 : 0;
-                        int result = gameState.boards[opponentId].applyAttack(row, col);
-
-                        String resultType = (result == 0) ? "MISS" : (result == 1) ? "HIT" : "SINK"; // 0:MISS,1:HIT,2:SINK
-                        broadcastToAll("ATTACK_RESULT " + (playerId + 1) + " " + row + " " + col + " " + resultType);
-
-                        // Check win condition
-                        if (gameState.boards[opponentId].allBlocksSunk()) {
-                            gameState.gameOver = true;
-                            broadcastToAll("GAME_OVER " + (playerId + 1));
-                            System.out.println("GAME_OVER : PlAYER " + (playerId + 1) + " WIN!");
-                        } else {
-                            // Switch turn
-                            gameState.currentPlayer = opponentId;
-                            broadcastToAll("TURN " + (gameState.currentPlayer + 1));
-                        }
+                        // Apply attack to the target's board
+                        int result = fireShot(playerId, targetId, row, col);
+
+                        // Format: ATTACK_RESULT attackerId targetId row col result
+                        broadcastReply(playerId, "ATTACK_RESULT " + (playerId + 1) + " " + (targetId + 1) + " " + row + " " + col + " " + resultName(result));
+                        endTurn(playerId, targetId, true);
                     }
                 }
             }
         }
 
-        private void broadcastToAll(String message) {
+        private boolean fleetPlaced(Board board) {
+            for (Shape shape : rules.getShapes()) {
+                if (board.countBlocks(shape) != rules.getCount(shape)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Commands can arrive ahead of GAME_START now that clients pipeline them
+        private boolean canAttack(int playerId) {
+            return allReady() && gameState.currentPlayer == playerId && !gameState.gameOver;
+        }
+
+        // The target is an optional last argument, without it the next player in turn order is attacked
+        private int parseTarget(int playerId, String[] parts, boolean given) {
+            return given ? Integer.parseInt(parts[parts.length - 1]) - 1 : nextInPlay(playerId);
+        }
+
+        private boolean isValidTarget(int playerId, int targetId) {
+            return targetId >= 0 && targetId < gameState.boards.length && targetId != playerId && !isEliminated(targetId);
+        }
+
+        private int fireShot(int playerId, int targetId, int row, int col) {
+            int result = gameState.boards[targetId].applyAttack(row, col);
+            gameState.shots[playerId]++;
+            gameState.moves++;
+            if (result > 0) {
+                gameState.hits[playerId]++;
+            }
+            return result;
+        }
+
+        private String resultName(int result) {
+            return (result == 0) ? "MISS" : (result == 1) ? "HIT" : "SINK"; // 0:MISS,1:HIT,2:SINK
+        }
+
+        // Check win condition, otherwise pass the turn to the next player still in the game
+        // (SALVO_RESULT already carries the next turn)
+        private void endTurn(int playerId, int targetId, boolean announceTurn) {
+            if (playersLeft() == 1) {
+                gameState.gameOver = true;
+                broadcastToAll("GAME_OVER " + (playerId + 1));
+                recordResult(playerId);
+                System.out.println("Match " + id + " GAME_OVER : PlAYER " + (playerId + 1) + " WIN!");
+            } else {
+                if (gameState.boards[targetId].allBlocksSunk()) {
+                    broadcastToAll("ELIMINATED " + (targetId + 1));
+                }
+                // Switch turn
+                gameState.currentPlayer = nextInPlay(playerId);
+                if (announceTurn) {
+                    broadcastToAll("TURN " + (gameState.currentPlayer + 1));
+                }
+            }
+        }
+    }
+
+    private static String tagged(String tag, String message) {
+        return tag == null ? message : tag + " " + message;
+    }
+
+    // Per-connection command budget: refills at a steady rate, allows short bursts
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double tokensPerSecond, double capacity) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // Reads one client connection and posts its commands to the match event loop.
+    // Replies go through a bounded outbox drained by a writer thread, so a match never waits on a socket.
+    private class PlayerHandler implements Runnable {
+        private final Connection connection;
+        private final boolean rateLimited;
+        private final boolean admin; // accepted on the admin listener, may only send admin queries
+        private final BlockingQueue<EncodedLine> outbox = new ArrayBlockingQueue<>(OUTBOX_CAPACITY);
+        private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT); // commands queued in the match
+        private final TokenBucket commandBudget = new TokenBucket(COMMANDS_PER_SECOND, COMMAND_BURST);
+        private volatile Match match; // set by the JOIN / RESUME handshake
+        private volatile int playerId = -1;
+
+        public PlayerHandler(Connection connection, boolean rateLimited, boolean admin) {
+            this.connection = connection;
+            this.rateLimited = rateLimited;
+            this.admin = admin;
+        }
+
+        @Override
+        public void run() {
+            pool.execute(this::writeLoop);
             try {
-                if (player1 != null && !player1.isClosed()) {
-                    PrintWriter p1Out = new PrintWriter(player1.getOutputStream(), true);
-                    p1Out.println(message);
+                String hello = connection.readLine(MAX_LINE_LENGTH);
+                if (hello == null || !handshake(hello)) {
+                    return;
                 }
 
-                if (player2 != null && !player2.isClosed()) {
-                    PrintWriter p2Out = new PrintWriter(player2.getOutputStream(), true);
-                    p2Out.println(message);
+                String inputLine;
+                while ((inputLine = connection.readLine(MAX_LINE_LENGTH)) != null) {
+                    // Optional "#seq " prefix, echoed on the reply so a client can send ahead
+                    String tag = null;
+                    if (inputLine.startsWith("#")) {
+                        int space = inputLine.indexOf(' ');
+                        tag = space > 0 ? inputLine.substring(0, space) : inputLine;
+                        inputLine = space > 0 ? inputLine.substring(space + 1) : "";
+                    }
+
+                    if (rateLimited && !commandBudget.tryAcquire()) {
+                        send(tagged(tag, "RATE_LIMITED"));
+                        continue;
+                    }
+
+                    // Blocks this reader once the match falls behind, which pushes back on the client
+                    inFlight.acquire();
+                    final String replyTag = tag;
+                    final String command = inputLine;
+                    Match current = match;
+                    current.submit(() -> {
+                        try {
+                            current.handleCommand(this, replyTag, command);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
                 }
             } catch (IOException e) {
-                System.err.println("Error broadcasting message: " + e.getMessage());
+                System.err.println("Connection lost with player " + (playerId + 1) + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+
+                Match current = match;
+                if (current != null) {
+                    current.submit(() -> current.playerDisconnected(this));
+                }
+            }
+        }
+
+        // Writes queued messages, flushing once per batch instead of once per line
+        private void writeLoop() {
+            try {
+                while (true) {
+                    EncodedLine line = outbox.take();
+                    do {
+                        if (line == CLOSE_MARKER) {
+                            connection.flush();
+                            return;
+                        }
+                        connection.writeLine(line);
+                    } while ((line = outbox.poll()) != null);
+                    connection.flush();
+                }
+            } catch (IOException e) {
+                // connection is gone, the reader side reports it
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connection.close();
+            }
+        }
+
+        // First line from client: JOIN [name] for a new player, RESUME token to reclaim a slot,
+        // STATUS for the gateway's load report (matches, players per match, players in the open match),
+        // LEADERBOARD for a one-off query,
+        // STATS for the records the gateway merges into one leaderboard.
+        // On the admin listener only SNAPSHOT matchId and EXPORT.
+        private boolean handshake(String line) {
+            if (admin) {
+                adminQuery(line);
+                return false;
+            }
+
+            if (line.equals("STATUS")) {
+                Match waiting = openMatch.get();
+                send("NODE " + nodeId + " MATCHES " + matches.size() + " PLAYERS " + rules.getPlayers()
+                        + " WAITING " + (waiting == null ? 0 : waiting.waitingPlayers()));
+                return false;
+            } else if (line.equals("LEADERBOARD")) {
+                send("LEADERBOARD " + leaderboard());
+                return false;
+            } else if (line.startsWith("STATS ")) {
+                // Format: STATS name,name,... answered with STATS name:wins:losses:shots:hits:turns,...
+                List<String> names = new ArrayList<>();
+                for (String name : line.substring("STATS ".length()).split(",")) {
+                    if (StatsStore.sanitizeName(name) != null) {
+                        names.add(name);
+                    }
+                }
+                send("STATS " + (stats == null ? "" : stats.getRecords(names)));
+                return false;
+            }
+
+            System.out.println("Client connected: " + connection);
+            if (line.equals("JOIN") || line.startsWith("JOIN ")) {
+                String name = StatsStore.sanitizeName(line.substring("JOIN".length()).trim());
+                joinMatch(this, name != null ? name : GUEST_NAME);
+                return true;
+            } else if (line.startsWith("RESUME ")) {
+                String token = line.substring("RESUME ".length()).trim();
+                Session session = sessions.get(token);
+                if (session != null) {
+                    Match current = session.match;
+                    match = current;
+                    playerId = session.playerId;
+                    current.submit(() -> current.resume(this, token));
+                    return true;
+                }
+                send("INVALID_SESSION");
+                return false;
+            }
+            send("INVALID_HANDSHAKE");
+            return false;
+        }
+
+        // Read-only. EXPORT replies with EXPORT_DATA lines (base64 of the export format) and then EXPORT_END count.
+        private void adminQuery(String line) {
+            if (line.equals("EXPORT")) {
+                try {
+                    int exported = exportMatches(new ExportLines());
+                    if (!sendWaiting(new EncodedLine("EXPORT_END " + exported))) {
+                        throw new IOException("admin stopped reading");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Export to " + connection + " failed: " + e.getMessage());
+                }
+                return;
+            }
+
+            if (!line.startsWith("SNAPSHOT ")) {
+                send("INVALID_HANDSHAKE");
+                return;
+            }
+            try {
+                String snapshot = snapshot(Integer.parseInt(line.substring("SNAPSHOT ".length()).trim()));
+                send(snapshot != null ? snapshot : "NO_MATCH");
+            } catch (NumberFormatException e) {
+                send("NO_MATCH");
+            }
+        }
+
+        // Cuts the export into EXPORT_DATA lines. An export can be far larger than the outbox,
+        // so it waits for the writer instead of counting the admin as a slow client.
+        private class ExportLines extends OutputStream {
+            private final byte[] chunk = new byte[EXPORT_CHUNK_BYTES];
+            private int length;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (length == chunk.length) {
+                    flush();
+                }
+                chunk[length++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int count) throws IOException {
+                while (count > 0) {
+                    if (length == chunk.length) {
+                        flush();
+                    }
+                    int copied = Math.min(count, chunk.length - length);
+                    System.arraycopy(bytes, offset, chunk, length, copied);
+                    length += copied;
+                    offset += copied;
+                    count -= copied;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (length == 0) {
+                    return;
+                }
+                byte[] data = length == chunk.length ? chunk : Arrays.copyOf(chunk, length);
+                EncodedLine line = new EncodedLine("EXPORT_DATA " + Base64.getEncoder().encodeToString(data));
+                length = 0;
+                if (!sendWaiting(line)) {
+                    throw new IOException("admin stopped reading");
+                }
+            }
+        }
+
+        // Admin connections only: waits for the writer to make room, false if it did not in time
+        private boolean sendWaiting(EncodedLine line) {
+            try {
+                return outbox.offer(line, EXPORT_SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void send(String message) {
+            send(new EncodedLine(message));
+        }
+
+        // Never blocks: a client that stops reading is disconnected once its outbox is full
+        void send(EncodedLine line) {
+            if (!outbox.offer(line)) {
+                System.err.println("Disconnecting slow client " + connection
+                        + " (" + OUTBOX_CAPACITY + " messages unread)");
+                connection.close();
+            }
+        }
+
+        // Closes after everything already queued has been written.
+        // An admin's outbox can still be full of export lines, so that close waits for room.
+        void close() {
+            if (!(admin ? sendWaiting(CLOSE_MARKER) : outbox.offer(CLOSE_MARKER))) {
+                connection.close();
             }
         }
     }
 
+    // Usage: java GameServer [port] [nodeId] [rules file] [admin port]
     public static void main(String[] args) {
-        GameServer server = new GameServer();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        String nodeId = args.length > 1 ? args[1] : "0";
+        String rulesPath = args.length > 2 ? args[2] : "rules.properties";
+        int adminPort = args.length > 3 ? Integer.parseInt(args[3]) : port + ADMIN_PORT_OFFSET;
+        GameServer server = new GameServer(port, adminPort, nodeId, rulesPath);
         server.start();
     }
-}
\ No newline at end of file
+}
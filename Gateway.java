@@ -0,0 +1,399 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Public entry point in front of several GameServer nodes.
+// Each new match goes to the least loaded node, RESUME goes back to the node that issued the token,
+// and after the first line the gateway only relays bytes.
+public class Gateway {
+    private static final int PORT = 8080;
+    private static final int STATUS_INTERVAL_MS = 1000;
+    private static final int STATUS_TIMEOUT_MS = 500;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HANDSHAKE_BYTES = 256;
+    private static final int MAX_STATS_NAMES_LENGTH = 200; // names per STATS query, a node reads at most 256 characters
+
+    private final int port;
+    private final List<Node> nodes = new ArrayList<>();
+    private ExecutorService pool;
+    private ScheduledExecutorService scheduler;
+
+    private static class Node {
+        final String host;
+        final int port;
+        volatile String id; // learned from the node's STATUS report
+        volatile int matches;
+        volatile int playersPerMatch = 2;
+        volatile int waiting; // players in the node's open match at the last STATUS report
+        volatile boolean up;
+        int routed; // players sent since the last STATUS report, guarded by the gateway
+
+        Node(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    public Gateway(int port, List<String> nodeAddresses) {
+        this.port = port;
+        for (String address : nodeAddresses) {
+            String[] parts = address.split(":");
+            nodes.add(new Node(parts[0], Integer.parseInt(parts[1])));
+        }
+    }
+
+    public void start() {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            pool = Executors.newCachedThreadPool();
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(this::pollNodes, 0, STATUS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+            System.out.println("Block Battle Gateway started on port " + port + " for nodes " + nodes);
+
+            while (true) {
+                SocketChannel client = server.accept();
+                pool.execute(() -> handleClient(client));
+            }
+        } catch (IOException e) {
+            System.err.println("Gateway error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // One-off question to a node on its own short connection
+    private String query(Node node, String line) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(node.host, node.port), STATUS_TIMEOUT_MS);
+            socket.setSoTimeout(STATUS_TIMEOUT_MS);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println(line);
+            String reply = in.readLine();
+            if (reply == null) {
+                throw new IOException("no reply to " + line);
+            }
+            return reply;
+        }
+    }
+
+    // Ask every node for its match count
+    private void pollNodes() {
+        for (Node node : nodes) {
+            try {
+                int routedBefore;
+                synchronized (this) {
+                    routedBefore = node.routed;
+                }
+                // Format: NODE id MATCHES count PLAYERS playersPerMatch WAITING playersInOpenMatch
+                String[] parts = query(node, "STATUS").split(" ");
+                synchronized (this) {
+                    node.id = parts[1];
+                    node.matches = Integer.parseInt(parts[3]);
+                    node.playersPerMatch = Integer.parseInt(parts[5]);
+                    node.waiting = parts.length > 7 ? Integer.parseInt(parts[7]) : 0;
+                    node.routed -= routedBefore; // players sent during the query may not be in the report yet
+                }
+                if (!node.up) {
+                    System.out.println("Node " + node.id + " (" + node + ") is up");
+                }
+                node.up = true;
+            } catch (IOException | RuntimeException e) {
+                if (node.up) {
+                    System.err.println("Node " + node + " is down: " + e.getMessage());
+                }
+                node.up = false;
+            }
+        }
+    }
+
+    // All players of a match must land on the same node. A node whose open match already has players
+    // gets the next JOIN, only otherwise does a new match go to the least loaded node.
+    // Every STATUS report replaces the estimate, so players who bypass the gateway or matches a node
+    // reshuffles do not leave it off for long.
+    private synchronized Node routeJoin() {
+        Node best = null;
+        for (Node node : nodes) {
+            if (node.up && waitingEstimate(node) > 0
+                    && (best == null || waitingEstimate(node) > waitingEstimate(best))) {
+                best = node; // fill the match closest to starting first
+            }
+        }
+        if (best == null) {
+            for (Node node : nodes) {
+                if (node.up && (best == null || load(node) < load(best))) {
+                    best = node;
+                }
+            }
+        }
+        if (best != null) {
+            best.routed++;
+        }
+        return best;
+    }
+
+    // Players in the node's open match: the last report plus the players sent since
+    private int waitingEstimate(Node node) {
+        return (node.waiting + node.routed) % node.playersPerMatch;
+    }
+
+    // Each node ranks only its own players, and one name can have games on several nodes.
+    // So every name on any node's top list is looked up on all nodes, summed and ranked again.
+    private String mergedLeaderboard() {
+        Set<String> names = new TreeSet<>();
+        for (Node node : nodes) {
+            if (!node.up) {
+                continue;
+            }
+            try {
+                // Format: LEADERBOARD name:wins:losses:hitRate:avgGameLength,...
+                String entries = query(node, "LEADERBOARD").substring("LEADERBOARD".length()).trim();
+                for (String entry : entries.split(",")) {
+                    if (!entry.isEmpty()) {
+                        names.add(entry.split(":")[0]);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No leaderboard from node " + node + ": " + e.getMessage());
+            }
+        }
+
+        Map<String, StatsStore.PlayerStats> totals = new HashMap<>();
+        for (Node node : nodes) {
+            if (!node.up) {
+                continue;
+            }
+            for (String batch : joinNames(names)) {
+                try {
+                    // Format: STATS name:wins:losses:shots:hits:turns,...
+                    String records = query(node, "STATS " + batch).substring("STATS".length()).trim();
+                    for (String record : records.split(",")) {
+                        if (record.isEmpty()) {
+                            continue;
+                        }
+                        String[] fields = record.split(":");
+                        StatsStore.PlayerStats total = totals.computeIfAbsent(fields[0],
+                                name -> new StatsStore.PlayerStats(name, -1));
+                        total.wins += Integer.parseInt(fields[1]);
+                        total.losses += Integer.parseInt(fields[2]);
+                        total.shots += Integer.parseInt(fields[3]);
+                        total.hits += Integer.parseInt(fields[4]);
+                        total.turns += Integer.parseInt(fields[5]);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("No stats from node " + node + ": " + e.getMessage());
+                }
+            }
+        }
+
+        List<StatsStore.PlayerStats> ranked = new ArrayList<>(totals.values());
+        ranked.sort(StatsStore.RANKING);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ranked.size() && i < StatsStore.LEADERBOARD_SIZE; i++) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(StatsStore.formatEntry(ranked.get(i)));
+        }
+        return sb.toString();
+    }
+
+    // Comma separated names, split so each STATS line stays short
+    private List<String> joinNames(Set<String> names) {
+        List<String> batches = new ArrayList<>();
+        StringBuilder batch = new StringBuilder();
+        for (String name : names) {
+            if (batch.length() > 0 && batch.length() + 1 + name.length() > MAX_STATS_NAMES_LENGTH) {
+                batches.add(batch.toString());
+                batch.setLength(0);
+            }
+            if (batch.length() > 0) {
+                batch.append(',');
+            }
+            batch.append(name);
+        }
+        if (batch.length() > 0) {
+            batches.add(batch.toString());
+        }
+        return batches;
+    }
+
+    // Matches reported by the node plus the ones started since that report
+    private int load(Node node) {
+        return node.matches + (node.routed + node.playersPerMatch - 1) / node.playersPerMatch;
+    }
+
+    private synchronized void markDown(Node node) {
+        node.up = false;
+    }
+
+    // Session tokens look like nodeId-hex
+    private Node routeResume(String token) {
+        int dash = token.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        String id = token.substring(0, dash);
+        for (Node node : nodes) {
+            if (id.equals(node.id)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void handleClient(SocketChannel client) {
+        SocketChannel backend = null;
+        try {
+            ByteBuffer head = ByteBuffer.allocate(MAX_HANDSHAKE_BYTES);
+            String hello = readFirstLine(client, head);
+            if (hello == null) {
+                return;
+            }
+
+            if (hello.equals("LEADERBOARD")) {
+                reply(client, "LEADERBOARD " + mergedLeaderboard());
+                return;
+            } else if (hello.startsWith("RESUME ")) {
+                Node node = routeResume(hello.substring("RESUME ".length()).trim());
+                backend = node == null ? null : connect(node);
+                if (backend == null) {
+                    reply(client, "INVALID_SESSION");
+                    return;
+                }
+            } else if (hello.equals("JOIN") || hello.startsWith("JOIN ")) {
+                for (int attempt = 0; attempt < nodes.size() && backend == null; attempt++) {
+                    Node node = routeJoin();
+                    if (node == null) {
+                        break;
+                    }
+                    backend = connect(node);
+                }
+                if (backend == null) {
+                    System.err.println("No game server available for " + client.getRemoteAddress());
+                    return;
+                }
+            } else {
+                // One-off queries (STATUS) and anything else go to any node that is up,
+                // without taking a slot in the match that is waiting for players
+                for (Node node : nodes) {
+                    if (node.up && backend == null) {
+                        backend = connect(node);
+                    }
+                }
+                if (backend == null) {
+                    System.err.println("No game server available for " + client.getRemoteAddress());
+                    return;
+                }
+            }
+
+            // Forward the handshake and anything read past it, then relay both ways
+            head.flip();
+            while (head.hasRemaining()) {
+                backend.write(head);
+            }
+
+            SocketChannel upstream = backend;
+            pool.execute(() -> relay(upstream, client));
+            relay(client, upstream);
+            backend = null; // closed by relay
+        } catch (IOException e) {
+            System.err.println("Gateway connection error: " + e.getMessage());
+        } finally {
+            closeQuietly(client);
+            if (backend != null) {
+                closeQuietly(backend);
+            }
+        }
+    }
+
+    private SocketChannel connect(Node node) {
+        try {
+            return SocketChannel.open(new InetSocketAddress(node.host, node.port));
+        } catch (IOException e) {
+            System.err.println("Could not reach node " + node + ": " + e.getMessage());
+            markDown(node);
+            return null;
+        }
+    }
+
+    // Reads until the first newline; every byte read stays in head so it can be forwarded
+    private String readFirstLine(SocketChannel channel, ByteBuffer head) throws IOException {
+        while (head.hasRemaining()) {
+            int start = head.position();
+            if (channel.read(head) < 0) {
+                return null;
+            }
+            for (int i = start; i < head.position(); i++) {
+                if (head.get(i) == '\n') {
+                    String line = new String(head.array(), 0, i, StandardCharsets.UTF_8);
+                    return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+                }
+            }
+        }
+        return null; // handshake too long
+    }
+
+    private void reply(SocketChannel channel, String message) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Copies through a direct buffer, so the bytes never pass through the Java heap
+    private void relay(SocketChannel from, SocketChannel to) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            while (from.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    to.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            // either side went away, closing both below ends the other relay too
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing channel: " + e.getMessage());
+        }
+    }
+
+    // Usage: java Gateway host:port [host:port ...]
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java Gateway host:port [host:port ...]");
+            return;
+        }
+        Gateway gateway = new Gateway(PORT, Arrays.asList(args));
+        gateway.start();
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// In-memory connection for bots, tests and benchmarks running in the same process as the server.
+// Each direction is a lock-free queue with a single reader, which parks while the queue is empty.
+public class LoopbackConnection implements Connection {
+    private static final int PIPE_CAPACITY = 1024; // unread lines before the writer is treated as talking to a dead peer
+
+    private final Pipe incoming;
+    private final Pipe outgoing;
+    private final String name;
+
+    private LoopbackConnection(Pipe incoming, Pipe outgoing, String name) {
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+        this.name = name;
+    }
+
+    // Two connected ends: what one writes the other reads
+    public static LoopbackConnection[] pair() {
+        Pipe aToB = new Pipe();
+        Pipe bToA = new Pipe();
+        return new LoopbackConnection[] {
+                new LoopbackConnection(bToA, aToB, "loopback-a"),
+                new LoopbackConnection(aToB, bToA, "loopback-b")
+        };
+    }
+
+    private static class Pipe {
+        private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile Thread reader; // parked reader, if any
+        private volatile boolean closed;
+
+        void put(String line) throws IOException {
+            if (closed) {
+                throw new IOException("connection closed");
+            }
+            if (size.incrementAndGet() > PIPE_CAPACITY) {
+                size.decrementAndGet();
+                throw new IOException("peer is not reading");
+            }
+            lines.offer(line);
+            LockSupport.unpark(reader);
+        }
+
+        String take() {
+            while (true) {
+                String line = lines.poll();
+                if (line != null) {
+                    size.decrementAndGet();
+                    return line;
+                }
+                if (closed) {
+                    return null;
+                }
+
+                reader = Thread.currentThread();
+                // Re-check after publishing ourselves, a writer may have missed the unpark
+                if (lines.isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                reader = null;
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            LockSupport.unpark(reader);
+        }
+    }
+
+    @Override
+    public String readLine(int maxLength) throws IOException {
+        String line = incoming.take();
+        if (line != null && line.length() > maxLength) {
+            throw new IOException("line longer than " + maxLength + " characters");
+        }
+        return line;
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        outgoing.put(line);
+    }
+
+    @Override
+    public void flush() {
+        // every line is visible to the peer as soon as it is written
+    }
+
+    @Override
+    public void close() {
+        incoming.close();
+        outgoing.close();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+// Plays full protocol games against a GameServer in the same process over LoopbackConnection:
+// turn order, a dropped player resuming mid-game, game over, and a second match on reused boards.
+// Usage: java LoopbackGameTest (prints OK, or fails with the first unexpected line)
+public class LoopbackGameTest {
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int TIMEOUT_SECONDS = 10; // a missing message would otherwise block forever
+
+    public static void main(String[] args) throws Exception {
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(TIMEOUT_SECONDS * 1000L);
+                System.err.println("FAILED: no progress in " + TIMEOUT_SECONDS + " s");
+                System.exit(1);
+            } catch (InterruptedException e) {
+                // test finished
+            }
+        });
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        File rulesFile = File.createTempFile("rules", ".properties");
+        rulesFile.deleteOnExit();
+        try (Writer writer = new FileWriter(rulesFile)) {
+            writer.write("shape.2x1=XX\nfleet=2x1:1\n");
+        }
+
+        GameServer server = new GameServer(0, "test", rulesFile.getPath());
+        server.setLogCommands(false);
+        server.setKeepStats(false);
+        server.open();
+
+        try {
+            playResumedGame(server);
+            playOnReusedBoards(server);
+        } catch (AssertionError e) {
+            System.err.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("OK");
+        System.exit(0);
+    }
+
+    private static void playResumedGame(GameServer server) throws IOException {
+        Connection a = server.connectLocal();
+        Connection b = server.connectLocal();
+        send(a, "JOIN alice");
+        expectPrefix(a, "PLAYER 1 ");
+        expect(a, "RULES salvo=1 players=2 2x1:1:XX");
+        send(b, "JOIN bob");
+        String tokenB = expectPrefix(b, "PLAYER 2 ").split(" ")[2];
+        expect(b, "RULES salvo=1 players=2 2x1:1:XX");
+
+        for (Connection player : new Connection[] {a, b}) {
+            send(player, "#1 PLACE_BLOCK 0 0 2x1 0");
+            expect(player, "#1 BLOCK_PLACED");
+            send(player, "#2 READY");
+            expect(player, "#2 OK");
+        }
+        expectAll("GAME_START", a, b);
+        expectAll("TURN 1", a, b);
+
+        // Out of turn
+        send(b, "#3 ATTACK 5 5");
+        expect(b, "#3 REJECTED");
+
+        send(a, "#3 ATTACK 5 5");
+        expect(a, "#3 ATTACK_RESULT 1 2 5 5 MISS");
+        expect(b, "ATTACK_RESULT 1 2 5 5 MISS");
+        expectAll("TURN 2", a, b);
+
+        send(b, "ATTACK 0 0");
+        expectAll("ATTACK_RESULT 2 1 0 0 HIT", a, b);
+        expectAll("TURN 1", a, b);
+
+        // Player 2 drops and comes back on a new connection
+        b.close();
+        expect(a, "OPPONENT_RECONNECTING 30 2");
+        b = server.connectLocal();
+        send(b, "RESUME " + tokenB);
+        expect(b, "RESUMED 2");
+        expect(b, "RULES salvo=1 players=2 2x1:1:XX");
+        expectPrefix(b, "SYNC PLAYING 1 ");
+        expect(a, "OPPONENT_RESUMED");
+
+        send(a, "ATTACK 0 0");
+        expectAll("ATTACK_RESULT 1 2 0 0 HIT", a, b);
+        expectAll("TURN 2", a, b);
+        send(b, "ATTACK 9 9");
+        expectAll("ATTACK_RESULT 2 1 9 9 MISS", a, b);
+        expectAll("TURN 1", a, b);
+        send(a, "ATTACK 0 1");
+        expectAll("ATTACK_RESULT 1 2 0 1 SINK", a, b);
+        expectAll("GAME_OVER 1", a, b);
+
+        a.close();
+        b.close();
+        // Closing the match sends its boards back to the pool
+        while (server.snapshot(1) != null) {
+            Thread.yield();
+        }
+    }
+
+    // Match 2 gets the boards of match 1, they must come back empty
+    private static void playOnReusedBoards(GameServer server) throws IOException {
+        Connection c = server.connectLocal();
+        Connection d = server.connectLocal();
+        send(c, "JOIN");
+        expectPrefix(c, "PLAYER 1 ");
+        expectPrefix(c, "RULES ");
+        send(d, "JOIN");
+        expectPrefix(d, "PLAYER 2 ");
+        expectPrefix(d, "RULES ");
+
+        for (Connection player : new Connection[] {c, d}) {
+            send(player, "#1 PLACE_BLOCK 0 0 2x1 0");
+            expect(player, "#1 BLOCK_PLACED");
+        }
+
+        // No hits or sunk cells carried over, one block each. Snapshots trail the match a little.
+        String boards = " PLACEMENT 1 0 1:0:0:03:0:0:0/1 2:0:0:03:0:0:0/1";
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        String snapshot = server.snapshot(2);
+        while (snapshot == null || !snapshot.startsWith("SNAPSHOT 2 ") || !snapshot.endsWith(boards)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("expected \"SNAPSHOT 2 ..." + boards + "\" but got \"" + snapshot + "\"");
+            }
+            Thread.yield();
+            snapshot = server.snapshot(2);
+        }
+
+        c.close();
+        d.close();
+    }
+
+    private static void send(Connection connection, String line) throws IOException {
+        connection.writeLine(line);
+        connection.flush();
+    }
+
+    private static String expect(Connection connection, String expected) throws IOException {
+        String line = connection.readLine(MAX_LINE_LENGTH);
+        if (!expected.equals(line)) {
+            throw new AssertionError("expected \"" + expected + "\" but got \"" + line + "\"");
+        }
+        return line;
+    }
+
+    private static String expectPrefix(Connection connection, String prefix) throws IOException {
+        String line = connection.readLine(MAX_LINE_LENGTH);
+        if (line == null || !line.startsWith(prefix)) {
+            throw new AssertionError("expected \"" + prefix + "...\" but got \"" + line + "\"");
+        }
+        return line;
+    }
+
+    private static void expectAll(String expected, Connection... connections) throws IOException {
+        for (Connection connection : connections) {
+            expect(connection, expected);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.*;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Shapes and fleet for a match, loaded from a properties file:
+//   shape.<name>=<pattern>        see Shape for the pattern format
+//   fleet=<name>:<count>,...      blocks each player has to place
+//   shotsPerTurn=<n>              more than 1 turns on salvo mode (ATTACK_MULTI)
+//   players=<n>                   players per match, more than 2 plays free-for-all
+// A node loads one file at startup, every match on that node shares its Shape tables.
+public class Rules {
+    private final Map<String, Shape> shapes = new LinkedHashMap<>(); // fleet order
+    private final Map<String, Integer> fleet = new LinkedHashMap<>();
+    private int shotsPerTurn = 1;
+    private int players = 2;
+
+    private Rules() {
+    }
+
+    public static Rules load(String path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(path)) {
+            properties.load(reader);
+        }
+
+        Rules rules = new Rules();
+        String fleetLine = properties.getProperty("fleet");
+        if (fleetLine == null) {
+            throw new IOException(path + " has no fleet");
+        }
+        for (String entry : fleetLine.split(",")) {
+            String[] parts = entry.trim().split(":");
+            String pattern = properties.getProperty("shape." + parts[0]);
+            if (pattern == null) {
+                throw new IOException(path + " has no shape." + parts[0]);
+            }
+            rules.add(parts[0], pattern.trim(), Integer.parseInt(parts[1]));
+        }
+        rules.shotsPerTurn = Integer.parseInt(properties.getProperty("shotsPerTurn", "1").trim());
+        if (rules.shotsPerTurn < 1) {
+            throw new IOException(path + " needs shotsPerTurn of at least 1");
+        }
+        rules.players = Integer.parseInt(properties.getProperty("players", "2").trim());
+        if (rules.players < 2 || rules.players > 64) {
+            throw new IOException(path + " needs 2 to 64 players");
+        }
+
+        return rules;
+    }
+
+    // The classic fleet, used when no rules file is present
+    public static Rules defaults() {
+        Rules rules = new Rules();
+        rules.add("2x1", "XX", 2);
+        rules.add("3x1", "XXX", 2);
+        rules.add("4x2", "XXXX/XXXX", 1);
+        rules.add("5x1", "XXXXX", 1);
+        return rules;
+    }
+
+    // Format: salvo=shotsPerTurn players=n name:count:pattern ... as sent in the RULES message
+    public static Rules parse(String wire) {
+        Rules rules = new Rules();
+        for (String entry : wire.trim().split(" ")) {
+            if (entry.startsWith("salvo=")) {
+                rules.shotsPerTurn = Integer.parseInt(entry.substring("salvo=".length()));
+                continue;
+            } else if (entry.startsWith("players=")) {
+                rules.players = Integer.parseInt(entry.substring("players=".length()));
+                continue;
+            }
+            String[] parts = entry.split(":");
+            rules.add(parts[0], parts[2], Integer.parseInt(parts[1]));
+        }
+        return rules;
+    }
+
+    public String toWire() {
+        StringBuilder sb = new StringBuilder("salvo=").append(shotsPerTurn).append(" players=").append(players);
+        for (Shape shape : shapes.values()) {
+            sb.append(' ');
+            sb.append(shape.getName()).append(':').append(fleet.get(shape.getName())).append(':').append(shape.getPattern());
+        }
+        return sb.toString();
+    }
+
+    private void add(String name, String pattern, int count) {
+        if (!name.matches("[A-Za-z0-9_]+") || !pattern.matches("[X./]+")) {
+            throw new IllegalArgumentException("Invalid shape " + name + "=" + pattern);
+        }
+        shapes.put(name, Shape.parse(name, pattern));
+        fleet.put(name, count);
+    }
+
+    public Shape getShape(String name) {
+        return shapes.get(name);
+    }
+
+    public Collection<Shape> getShapes() {
+        return shapes.values();
+    }
+
+    public int getCount(Shape shape) {
+        return fleet.get(shape.getName());
+    }
+
+    public int getShotsPerTurn() {
+        return shotsPerTurn;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public int getFleetSize() {
+        int total = 0;
+        for (int count : fleet.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
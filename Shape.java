@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A polyomino block. Written as rows separated by '/', with X for a filled cell, e.g. "X./X./XX" is an L.
+// Every rotation and every anchor cell is compiled once into a footprint mask, so checking a placement
+// costs the same for any shape.
+public class Shape {
+    public static final int ROTATIONS = 4; // 0, 90, 180, 270 degrees clockwise
+
+    private final String name;
+    private final String pattern;
+    private final int[][][] cells; // [rotation][cell] = {row, col} offset from the top-left corner
+    private final long[][][] footprints; // [rotation][row * SIZE + col] = occupied cells, null if off the board
+
+    private Shape(String name, String pattern, List<int[]> baseCells) {
+        this.name = name;
+        this.pattern = pattern;
+        this.cells = new int[ROTATIONS][][];
+        this.footprints = new long[ROTATIONS][Board.SIZE * Board.SIZE][];
+
+        List<int[]> rotated = baseCells;
+        for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+            cells[rotation] = normalize(rotated);
+            for (int row = 0; row < Board.SIZE; row++) {
+                for (int col = 0; col < Board.SIZE; col++) {
+                    footprints[rotation][row * Board.SIZE + col] = compileFootprint(cells[rotation], row, col);
+                }
+            }
+            rotated = rotateClockwise(rotated);
+        }
+    }
+
+    public static Shape parse(String name, String pattern) {
+        List<int[]> cells = new ArrayList<>();
+        String[] rows = pattern.split("/");
+        for (int r = 0; r < rows.length; r++) {
+            for (int c = 0; c < rows[r].length(); c++) {
+                if (rows[r].charAt(c) == 'X') {
+                    cells.add(new int[] {r, c});
+                }
+            }
+        }
+        if (cells.isEmpty()) {
+            throw new IllegalArgumentException("Shape " + name + " has no cells: " + pattern);
+        }
+        return new Shape(name, pattern, cells);
+    }
+
+    private static List<int[]> rotateClockwise(List<int[]> cells) {
+        List<int[]> rotated = new ArrayList<>();
+        for (int[] cell : cells) {
+            rotated.add(new int[] {cell[1], -cell[0]});
+        }
+        return rotated;
+    }
+
+    // Shift so the smallest row and column are 0
+    private static int[][] normalize(List<int[]> cells) {
+        int minRow = Integer.MAX_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        for (int[] cell : cells) {
+            minRow = Math.min(minRow, cell[0]);
+            minCol = Math.min(minCol, cell[1]);
+        }
+        int[][] result = new int[cells.size()][];
+        for (int i = 0; i < cells.size(); i++) {
+            result[i] = new int[] {cells.get(i)[0] - minRow, cells.get(i)[1] - minCol};
+        }
+        return result;
+    }
+
+    private static long[] compileFootprint(int[][] cells, int row, int col) {
+        long[] mask = new long[Board.MASK_WORDS];
+        for (int[] cell : cells) {
+            int r = row + cell[0];
+            int c = col + cell[1];
+            if (r >= Board.SIZE || c >= Board.SIZE) {
+                return null;
+            }
+            int index = r * Board.SIZE + c;
+            mask[index >> 6] |= 1L << index;
+        }
+        return mask;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public int size() {
+        return cells[0].length;
+    }
+
+    // Cells covered when anchored at (row, col), or null if the shape does not fit on the board
+    public long[] footprint(int rotation, int row, int col) {
+        if (rotation < 0 || rotation >= ROTATIONS || row < 0 || row >= Board.SIZE || col < 0 || col >= Board.SIZE) {
+            return null;
+        }
+        return footprints[rotation][row * Board.SIZE + col];
+    }
+
+    public int[][] cells(int rotation) {
+        return cells[rotation];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Player stats kept in a file of fixed-size records.
+// All reads and writes run on the store's own thread: callers only post results, so a match
+// never waits on the disk. Changed players are written back in one batch per flush interval.
+public class StatsStore {
+    private static final int NAME_BYTES = 16;
+    private static final int RECORD_SIZE = NAME_BYTES + 5 * 4; // name, wins, losses, shots, hits, turns
+    private static final int CACHE_SIZE = 1024; // players kept in memory
+    static final int LEADERBOARD_SIZE = 10;
+    private static final int FLUSH_INTERVAL_MS = 1000;
+
+    private final RandomAccessFile file;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(); // owns all state below
+    private final Map<String, Integer> recordIndex = new HashMap<>(); // name -> record number in the file
+    private final Map<String, PlayerStats> dirty = new HashMap<>(); // changed since the last flush
+    private final Map<String, PlayerStats> cache = new LinkedHashMap<String, PlayerStats>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlayerStats> eldest) {
+            return size() > CACHE_SIZE; // dirty entries are still held by the dirty map
+        }
+    };
+
+    // Most wins first, ties by name
+    static final Comparator<PlayerStats> RANKING =
+            Comparator.comparingInt((PlayerStats p) -> p.wins).reversed().thenComparing(p -> p.name);
+
+    // Top players by wins. Wins never go down, so a bounded set stays correct without rescans.
+    private final TreeSet<PlayerStats> top = new TreeSet<>(RANKING);
+    private final Map<String, PlayerStats> ranked = new HashMap<>();
+    private volatile String leaderboard = "";
+
+    public static class PlayerStats {
+        final String name;
+        final int record;
+        int wins;
+        int losses;
+        int shots;
+        int hits;
+        int turns; // sum of game lengths in attacks
+
+        PlayerStats(String name, int record) {
+            this.name = name;
+            this.record = record;
+        }
+
+        int hitRatePercent() {
+            return shots == 0 ? 0 : hits * 100 / shots;
+        }
+
+        int averageGameLength() {
+            int games = wins + losses;
+            return games == 0 ? 0 : turns / games;
+        }
+    }
+
+    public StatsStore(String path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        loadIndex();
+        worker.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // One pass at startup to find every player's record and seed the leaderboard
+    private void loadIndex() throws IOException {
+        int records = (int) (file.length() / RECORD_SIZE);
+        for (int i = 0; i < records; i++) {
+            PlayerStats stats = readRecord(i);
+            recordIndex.put(stats.name, i);
+            rank(stats);
+        }
+        publishLeaderboard();
+        System.out.println("Loaded stats for " + records + " players");
+    }
+
+    // Safe from any thread, returns immediately
+    public void recordResult(String name, boolean won, int shots, int hits, int gameLength) {
+        worker.execute(() -> {
+            try {
+                PlayerStats stats = lookup(name);
+                unrank(stats);
+                if (won) {
+                    stats.wins++;
+                } else {
+                    stats.losses++;
+                }
+                stats.shots += shots;
+                stats.hits += hits;
+                stats.turns += gameLength;
+                dirty.put(name, stats);
+                rank(stats);
+                publishLeaderboard();
+            } catch (IOException e) {
+                System.err.println("Could not record stats for " + name + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Format: name:wins:losses:hitRate%:avgGameLength,... best first
+    public String getLeaderboard() {
+        return leaderboard;
+    }
+
+    // Full records of the given names, for merging the leaderboards of several nodes.
+    // Format: name:wins:losses:shots:hits:turns,... names without games are left out.
+    // Waits for the store's thread, so it is meant for one-off queries.
+    public String getRecords(Collection<String> names) {
+        Future<String> records = worker.submit(() -> {
+            StringBuilder sb = new StringBuilder();
+            for (String name : names) {
+                PlayerStats stats = find(name);
+                if (stats == null) {
+                    continue;
+                }
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(stats.name).append(':').append(stats.wins).append(':').append(stats.losses)
+                        .append(':').append(stats.shots).append(':').append(stats.hits).append(':').append(stats.turns);
+            }
+            return sb.toString();
+        });
+        try {
+            return records.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        } catch (ExecutionException e) {
+            System.err.println("Could not read stats: " + e.getCause().getMessage());
+            return "";
+        }
+    }
+
+    public void close() {
+        worker.execute(this::flushQuietly);
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+            file.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing stats file: " + e.getMessage());
+        }
+    }
+
+    private PlayerStats lookup(String name) throws IOException {
+        PlayerStats stats = find(name);
+        if (stats == null) {
+            stats = new PlayerStats(name, recordIndex.size());
+            recordIndex.put(name, stats.record);
+            cache.put(name, stats);
+        }
+        return stats;
+    }
+
+    // Null for a name that never finished a game
+    private PlayerStats find(String name) throws IOException {
+        PlayerStats stats = dirty.get(name);
+        if (stats == null) {
+            stats = cache.get(name);
+        }
+        if (stats == null) {
+            stats = ranked.get(name);
+        }
+        if (stats == null) {
+            Integer record = recordIndex.get(name);
+            if (record == null) {
+                return null;
+            }
+            stats = readRecord(record);
+        }
+        cache.put(name, stats);
+        return stats;
+    }
+
+    private void unrank(PlayerStats stats) {
+        PlayerStats current = ranked.remove(stats.name);
+        if (current != null) {
+            top.remove(current);
+        }
+    }
+
+    private void rank(PlayerStats stats) {
+        if (top.size() < LEADERBOARD_SIZE || top.comparator().compare(stats, top.last()) < 0) {
+            top.add(stats);
+            ranked.put(stats.name, stats);
+            if (top.size() > LEADERBOARD_SIZE) {
+                ranked.remove(top.pollLast().name);
+            }
+        }
+    }
+
+    private void publishLeaderboard() {
+        StringBuilder sb = new StringBuilder();
+        for (PlayerStats stats : top) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(formatEntry(stats));
+        }
+        leaderboard = sb.toString();
+    }
+
+    // One leaderboard entry: name:wins:losses:hitRate%:avgGameLength
+    static String formatEntry(PlayerStats stats) {
+        return stats.name + ":" + stats.wins + ":" + stats.losses + ":" + stats.hitRatePercent()
+                + ":" + stats.averageGameLength();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Could not write stats: " + e.getMessage());
+        }
+    }
+
+    // Write every changed player in record order, then sync once for the whole batch
+    private void flush() throws IOException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Integer, PlayerStats> byRecord = new TreeMap<>();
+        for (PlayerStats stats : dirty.values()) {
+            byRecord.put(stats.record, stats);
+        }
+        for (PlayerStats stats : byRecord.values()) {
+            writeRecord(stats);
+        }
+        file.getChannel().force(false);
+        dirty.clear();
+    }
+
+    private PlayerStats readRecord(int record) throws IOException {
+        byte[] bytes = new byte[NAME_BYTES];
+        file.seek((long) record * RECORD_SIZE);
+        file.readFully(bytes);
+        int length = 0;
+        while (length < NAME_BYTES && bytes[length] != 0) {
+            length++;
+        }
+
+        PlayerStats stats = new PlayerStats(new String(bytes, 0, length, StandardCharsets.US_ASCII), record);
+        stats.wins = file.readInt();
+        stats.losses = file.readInt();
+        stats.shots = file.readInt();
+        stats.hits = file.readInt();
+        stats.turns = file.readInt();
+        return stats;
+    }
+
+    private void writeRecord(PlayerStats stats) throws IOException {
+        byte[] bytes = new byte[NAME_BYTES];
+        byte[] name = stats.name.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(name, 0, bytes, 0, Math.min(name.length, NAME_BYTES));
+
+        file.seek((long) stats.record * RECORD_SIZE);
+        file.write(bytes);
+        file.writeInt(stats.wins);
+        file.writeInt(stats.losses);
+        file.writeInt(stats.shots);
+        file.writeInt(stats.hits);
+        file.writeInt(stats.turns);
+    }
+
+    // Player names are stored in fixed-width ASCII fields
+    public static String sanitizeName(String name) {
+        if (name == null || !name.matches("[A-Za-z0-9_]{1," + NAME_BYTES + "}")) {
+            return null;
+        }
+        return name;
+    }
+}
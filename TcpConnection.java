@@ -0,0 +1,72 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class TcpConnection implements Connection {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedOutputStream out;
+    private final StringBuilder lineBuffer = new StringBuilder();
+
+    public TcpConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    // readLine with a length limit, so a peer cannot grow our buffer without bound.
+    // Only a '\r' right before the '\n' is dropped, the same as the gateway's handshake reader.
+    @Override
+    public String readLine(int maxLength) throws IOException {
+        lineBuffer.setLength(0);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = lineBuffer.length();
+                if (end > 0 && lineBuffer.charAt(end - 1) == '\r') {
+                    lineBuffer.setLength(end - 1);
+                }
+                if (lineBuffer.length() > maxLength) {
+                    throw new IOException("line longer than " + maxLength + " characters");
+                }
+                return lineBuffer.toString();
+            }
+            if (lineBuffer.length() > maxLength) { // one extra for a trailing '\r'
+                throw new IOException("line longer than " + maxLength + " characters");
+            }
+            lineBuffer.append((char) c);
+        }
+        return lineBuffer.length() > 0 ? lineBuffer.toString() : null;
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    // Copies the shared bytes straight into the socket buffer, no per-connection encoding
+    @Override
+    public void writeLine(EncodedLine line) throws IOException {
+        out.write(line.getBytes());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(socket.getInetAddress());
+    }
+}